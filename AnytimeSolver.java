@@ -0,0 +1,178 @@
+import java.util.SplittableRandom;
+
+// Time-bounded search with randomized restarts. Each run searches with random tie-breaking in
+// variable selection and value order until it has used its node budget, then starts over from the
+// root with a fresh value order. Budgets follow the Luby sequence (1, 1, 2, 1, 1, 2, 4, ...) or a
+// geometric one, times a unit. One nogood cache is kept across runs: a refutation holds regardless
+// of the order in which the state was reached, so later runs skip what earlier ones proved.
+//
+// When the deadline passes without a solution, the result is the placement closest to the targets
+// by L1 distance among those seen: at every stop poll the current partial assignment is completed
+// greedily and scored, and the best one is returned marked as non-exact.
+final class AnytimeSolver {
+
+    enum Schedule { LUBY, GEOMETRIC }
+
+    // Nodes per unit of the restart schedule.
+    static final long DEFAULT_UNIT = 4 * Solver.STOP_INTERVAL;
+    static final double GEOMETRIC_FACTOR = 1.5;
+
+    static final class Result {
+        // Type ordinal per tile; tiles the inventory could not cover are Solver.UNASSIGNED.
+        final int[] assignment;
+        // Whether the assignment meets every target exactly.
+        final boolean exact;
+        // Sum over colors of |visible - target|.
+        final int distance;
+        // Whether the search finished, so that a non-exact result means no exact one exists.
+        final boolean complete;
+        final int restarts;
+
+        Result(int[] assignment, boolean exact, int distance, boolean complete, int restarts) {
+            this.assignment = assignment;
+            this.exact = exact;
+            this.distance = distance;
+            this.complete = complete;
+            this.restarts = restarts;
+        }
+    }
+
+    final Problem problem;
+    final Schedule schedule;
+    final long seed;
+    final long cacheBytes;
+    long unit = DEFAULT_UNIT;
+    // Whether to branch first on tiles whose assignments failed most; the counts carry across
+    // restarts.
+    boolean impactOrdering;
+    // Instrumentation for the whole run across restarts, or null for none.
+    SearchStats stats;
+
+    private int[] best;
+    private int bestDistance = Integer.MAX_VALUE;
+    // Set when a greedy completion happens to place every tile and meet every target.
+    private boolean found;
+
+    AnytimeSolver(Problem problem, Schedule schedule, long seed, long cacheBytes) {
+        this.problem = problem;
+        this.schedule = schedule;
+        this.seed = seed;
+        this.cacheBytes = cacheBytes;
+    }
+
+    // Searches until a solution is found, the search space is exhausted or the deadline (a
+    // System.nanoTime value) passes.
+    Result solve(long deadline) {
+        Solver solver = new Solver(problem);
+        solver.nogoods = cacheBytes > 0 ? new NogoodCache(cacheBytes) : null;
+        solver.stats = stats;
+        solver.impactOrdering = impactOrdering;
+        if (stats != null) {
+            stats.start();
+        }
+        Result result = search(solver, deadline);
+        if (stats != null) {
+            stats.finish(solver, result.exact);
+        }
+        return result;
+    }
+
+    private Result search(Solver solver, long deadline) {
+        solver.random = new SplittableRandom(seed);
+        solver.reorderValues();
+        if (!solver.propagate()) {
+            solver.restoreDomains(0);
+            return approximate(solver, true, 0);
+        }
+        // Knuth's reluctant doubling: v runs through the Luby sequence.
+        long u = 1;
+        long v = 1;
+        double budget = 1;
+        for (int run = 0; ; run++) {
+            long runBudget = schedule == Schedule.LUBY ? v : (long) budget;
+            long limit = solver.nodes + unit * runBudget;
+            solver.stop = () -> {
+                snapshot(solver);
+                return found || solver.nodes > limit || System.nanoTime() > deadline;
+            };
+            if (solver.backtrack()) {
+                return new Result(solver.assignment.clone(), true, 0, true, run);
+            }
+            if (found) {
+                return new Result(best, true, 0, true, run);
+            }
+            if (!solver.aborted) {
+                return approximate(solver, true, run);
+            }
+            if (System.nanoTime() > deadline) {
+                return approximate(solver, false, run);
+            }
+            solver.reset();
+            solver.reorderValues();
+            solver.propagate();
+            if ((u & -u) == v) {
+                u++;
+                v = 1;
+            } else {
+                v *= 2;
+            }
+            budget *= GEOMETRIC_FACTOR;
+        }
+    }
+
+    private Result approximate(Solver solver, boolean complete, int restarts) {
+        if (best == null) {
+            snapshot(solver);
+        }
+        return new Result(best, false, bestDistance, complete, restarts);
+    }
+
+    // Completes the solver's current partial assignment greedily without touching its state, and
+    // keeps it if it is the closest to the targets so far. Each unassigned tile takes the type,
+    // among those still in stock and preferably still in its domain, that leaves the running sums
+    // closest to the targets.
+    private void snapshot(Solver solver) {
+        int[] assignment = solver.assignment.clone();
+        int[] sums = solver.current.clone();
+        int[] left = solver.remaining.clone();
+        int[] targets = problem.targets;
+        byte[] contrib = problem.contrib;
+        boolean placed = true;
+        for (int i = 0; i < solver.freeCount; i++) {
+            int var = solver.free[i];
+            int chosen = Solver.UNASSIGNED;
+            int chosenCost = Integer.MAX_VALUE;
+            for (int t = 0; t < Problem.TYPES; t++) {
+                if (left[t] <= 0) continue;
+                int base = (var * Problem.TYPES + t) * Problem.COLORS;
+                int cost = (solver.domain[var] & (1 << t)) != 0 ? 0 : Integer.MAX_VALUE / 2;
+                for (int c = 0; c < Problem.COLORS; c++) {
+                    cost += Math.abs(sums[c] + contrib[base + c] - targets[c]);
+                }
+                if (cost < chosenCost) {
+                    chosenCost = cost;
+                    chosen = t;
+                }
+            }
+            if (chosen == Solver.UNASSIGNED) {
+                placed = false;
+                continue;
+            }
+            assignment[var] = chosen;
+            left[chosen]--;
+            int base = (var * Problem.TYPES + chosen) * Problem.COLORS;
+            for (int c = 0; c < Problem.COLORS; c++) {
+                sums[c] += contrib[base + c];
+            }
+        }
+        int distance = 0;
+        for (int c = 0; c < Problem.COLORS; c++) {
+            distance += Math.abs(sums[c] - targets[c]);
+        }
+        if (distance < bestDistance) {
+            bestDistance = distance;
+            best = assignment;
+            found = distance == 0 && placed;
+        }
+    }
+}
@@ -0,0 +1,230 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Solves many problem files in one JVM, so JIT warm-up is paid once instead of per file.
+// Every file is a task on a virtual thread when the runtime has them (Java 21+) and on a small
+// platform pool otherwise. The search is CPU bound, so a semaphore lets only `workers` searches run
+// at once; loading happens before a search permit is taken, so other inputs load while searches
+// run. A second semaphore caps the problems held in memory at LOADS_PER_WORKER per worker.
+//
+// Each input gets <name>.out in the output directory with the text Main would print for it, and
+// summary.tsv there lists the outcome and times of every input.
+final class BatchSolver {
+
+    enum Outcome { SOLVED, NO_SOLUTION, TIMEOUT, ERROR }
+
+    static final int LOADS_PER_WORKER = 2;
+
+    static final class Result {
+        final Path input;
+        final Path output;
+        Outcome outcome = Outcome.ERROR;
+        int tiles;
+        long loadNanos;
+        long solveNanos;
+        long nodes;
+        String error;
+
+        Result(Path input, Path output) {
+            this.input = input;
+            this.output = output;
+        }
+    }
+
+    final Path outDir;
+    // Searches allowed to run at the same time.
+    final int workers;
+    // Budget per input for loading and solving, not counting the wait for a search permit; 0 for none.
+    final long timeoutNanos;
+    final long cacheBytes;
+
+    BatchSolver(Path outDir, int workers, long timeoutNanos, long cacheBytes) {
+        this.outDir = outDir;
+        this.workers = workers;
+        this.timeoutNanos = timeoutNanos;
+        this.cacheBytes = cacheBytes;
+    }
+
+    // The problem files of a directory (*.txt and *.bin, by name), or those listed in a manifest
+    // with one path per line relative to the manifest. Blank lines and '#' comments are skipped.
+    static List<Path> inputs(Path source) throws IOException {
+        if (Files.isDirectory(source)) {
+            try (Stream<Path> files = Files.list(source)) {
+                return files.filter(Files::isRegularFile)
+                        .filter(p -> p.getFileName().toString().endsWith(".txt") || p.getFileName().toString().endsWith(".bin"))
+                        .sorted()
+                        .collect(Collectors.toList());
+            }
+        }
+        Path base = source.toAbsolutePath().getParent();
+        List<Path> inputs = new ArrayList<>();
+        for (String line : Files.readAllLines(source, StandardCharsets.UTF_8)) {
+            String name = line.trim();
+            if (!name.isEmpty() && !name.startsWith("#")) {
+                inputs.add(base.resolve(name));
+            }
+        }
+        return inputs;
+    }
+
+    List<Result> run(List<Path> inputs) throws IOException, InterruptedException {
+        Files.createDirectories(outDir);
+        List<Result> results = new ArrayList<>(inputs.size());
+        Set<String> names = new HashSet<>();
+        for (Path input : inputs) {
+            // Inputs from different directories may share a name.
+            String name = input.getFileName().toString();
+            String unique = name;
+            for (int n = 2; !names.add(unique); n++) {
+                unique = name + "-" + n;
+            }
+            results.add(new Result(input, outDir.resolve(unique + ".out")));
+        }
+
+        Semaphore permits = new Semaphore(workers);
+        Semaphore loads = new Semaphore(LOADS_PER_WORKER * workers);
+        ExecutorService executor = newExecutor(LOADS_PER_WORKER * workers);
+        try {
+            List<Future<?>> futures = new ArrayList<>(results.size());
+            for (Result result : results) {
+                futures.add(executor.submit(() -> solve(result, loads, permits)));
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    // solve records its own failures; anything else is a bug worth seeing.
+                    throw new IllegalStateException(e.getCause());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        writeSummary(results);
+        return results;
+    }
+
+    // Virtual threads where available, otherwise a fixed pool of platform threads; the pool should
+    // be larger than the number of searches so that others can load or write files meanwhile.
+    static ExecutorService newExecutor(int platformThreads) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(platformThreads);
+        }
+    }
+
+    private void solve(Result result, Semaphore loads, Semaphore permits) {
+        String text;
+        try {
+            loads.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        try {
+            text = loadAndSearch(result, permits);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } catch (IOException | RuntimeException e) {
+            result.outcome = Outcome.ERROR;
+            result.error = String.valueOf(e.getMessage());
+            text = "Error: " + result.error + System.lineSeparator();
+        } finally {
+            loads.release();
+        }
+        try {
+            Files.write(result.output, text.getBytes(StandardCharsets.US_ASCII));
+        } catch (IOException e) {
+            result.outcome = Outcome.ERROR;
+            result.error = "cannot write " + result.output + ": " + e.getMessage();
+        }
+    }
+
+    // Loads an input, then waits for a search permit and solves it. Returns the text Main would
+    // print for it.
+    private String loadAndSearch(Result result, Semaphore permits) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        Problem problem = Main.loadProblem(result.input, false, false);
+        result.tiles = problem.numTiles;
+        result.loadNanos = System.nanoTime() - start;
+        Solver solver = new Solver(problem);
+        solver.nogoods = cacheBytes > 0 ? new NogoodCache(cacheBytes) : null;
+        permits.acquire();
+        try {
+            long solveStart = System.nanoTime();
+            if (timeoutNanos > 0) {
+                // The load time counts towards the budget, the wait for the permit does not.
+                long deadline = solveStart + timeoutNanos - result.loadNanos;
+                solver.stop = () -> System.nanoTime() > deadline;
+            }
+            int[] solution = solver.solve();
+            result.solveNanos = System.nanoTime() - solveStart;
+            result.nodes = solver.nodes;
+            if (solver.aborted) {
+                result.outcome = Outcome.TIMEOUT;
+                return String.format(Locale.ROOT, "Timed out after %d ms%n", timeoutNanos / 1_000_000);
+            }
+            result.outcome = solution != null ? Outcome.SOLVED : Outcome.NO_SOLUTION;
+            return Main.formatSolution(solution);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void writeSummary(List<Result> results) throws IOException {
+        try (Writer out = Files.newBufferedWriter(outDir.resolve("summary.tsv"), StandardCharsets.UTF_8)) {
+            out.write("file\toutcome\ttiles\tload_ms\tsolve_ms\tnodes\terror\n");
+            for (Result r : results) {
+                out.write(String.format(Locale.ROOT, "%s\t%s\t%d\t%.3f\t%.3f\t%d\t%s%n", r.input, r.outcome, r.tiles,
+                        r.loadNanos / 1e6, r.solveNanos / 1e6, r.nodes, r.error == null ? "" : r.error));
+            }
+        }
+    }
+
+    // One-paragraph summary of outcomes and solve times, for the console.
+    static String summarize(List<Result> results, long wallNanos) {
+        int[] counts = new int[Outcome.values().length];
+        long[] times = new long[results.size()];
+        for (int i = 0; i < results.size(); i++) {
+            counts[results.get(i).outcome.ordinal()]++;
+            times[i] = results.get(i).solveNanos;
+        }
+        Arrays.sort(times);
+        double mean = Arrays.stream(times).average().orElse(0);
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.ROOT, "%d files in %.2f s:", results.size(), wallNanos / 1e9));
+        for (Outcome outcome : Outcome.values()) {
+            sb.append(' ').append(outcome.name().toLowerCase(Locale.ROOT)).append('=').append(counts[outcome.ordinal()]);
+        }
+        sb.append(System.lineSeparator());
+        if (times.length > 0) {
+            sb.append(String.format(Locale.ROOT, "solve ms: mean %.2f, p50 %.2f, p95 %.2f, max %.2f%n", mean / 1e6,
+                    percentile(times, 50) / 1e6, percentile(times, 95) / 1e6, times[times.length - 1] / 1e6));
+        }
+        return sb.toString();
+    }
+
+    // Nearest-rank percentile of sorted values.
+    private static long percentile(long[] sorted, int p) {
+        int rank = (int) Math.ceil(p / 100.0 * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+}
@@ -0,0 +1,207 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+// Micro-benchmarks for the solver pipeline on problems made by Generator.
+// The harness follows the JMH recipe without the dependency: every benchmark runs a number of
+// timed warmup iterations that are discarded, then measurement iterations of at least
+// --iteration-ms each, and reports the mean time per operation with a 99.9% confidence interval
+// from Student's t over the measurement iterations.
+// Results go through a sink field so the JIT cannot drop the work.
+//
+//   java Benchmark [--sizes 20,100,200,400] [--seed N] [--density D] [--warmup N]
+//                  [--iterations N] [--iteration-ms N] [--solve-limit-ms N] [--only name]
+public class Benchmark {
+
+    static final String[] BENCHMARKS = {"parseInput", "buildTables", "propagate", "solve"};
+
+    interface Op {
+        Object run();
+    }
+
+    // Two-sided 99.9% quantiles of Student's t for 1 to 30 degrees of freedom, as JMH uses for
+    // its error; more degrees of freedom use the Cornish-Fisher expansion around the normal one.
+    private static final double[] T_999 = {
+        636.619, 31.599, 12.924, 8.610, 6.869, 5.959, 5.408, 5.041, 4.781, 4.587,
+        4.437, 4.318, 4.221, 4.140, 4.073, 4.015, 3.965, 3.922, 3.883, 3.850,
+        3.819, 3.792, 3.768, 3.745, 3.725, 3.707, 3.690, 3.674, 3.659, 3.646,
+    };
+    private static final double Z_999 = 3.2905267;
+
+    static volatile Object sink;
+
+    int warmup = 3;
+    int iterations = 5;
+    long iterationMs = 1000;
+    // A solve that runs longer than this is abandoned and reported as a timeout.
+    long solveLimitMs = 10_000;
+
+    // Runs one benchmark and prints its line; returns the mean in nanoseconds per operation.
+    double measure(String name, int size, Op op) {
+        return measure(name, size, null, op);
+    }
+
+    // As above, running setup before every operation outside the timed part.
+    double measure(String name, int size, Runnable setup, Op op) {
+        for (int i = 0; i < warmup; i++) {
+            iteration(setup, op);
+        }
+        double[] scores = new double[iterations];
+        for (int i = 0; i < iterations; i++) {
+            scores[i] = iteration(setup, op);
+        }
+        double mean = 0;
+        for (double score : scores) {
+            mean += score;
+        }
+        mean /= scores.length;
+        double variance = 0;
+        for (double score : scores) {
+            variance += (score - mean) * (score - mean);
+        }
+        double error = scores.length > 1 ? quantile(scores.length - 1) * Math.sqrt(variance / (scores.length - 1) / scores.length) : 0;
+        System.out.printf("%-12s %6d  avgt  %3d  %14.3f +- %12.3f  us/op%n", name, size, scores.length, mean / 1e3, error / 1e3);
+        return mean;
+    }
+
+    // Two-sided 99.9% quantile of Student's t with the given degrees of freedom.
+    static double quantile(int degrees) {
+        if (degrees <= T_999.length) {
+            return T_999[degrees - 1];
+        }
+        double z = Z_999;
+        double z2 = z * z;
+        double n = degrees;
+        return z + z * (z2 + 1) / (4 * n)
+                + z * ((5 * z2 + 16) * z2 + 3) / (96 * n * n)
+                + z * (((3 * z2 + 19) * z2 + 17) * z2 - 15) / (384 * n * n * n);
+    }
+
+    // Repeats the operation for at least iterationMs and returns nanoseconds per operation. With
+    // a setup, each operation is timed on its own so the setup is left out; that is only meant
+    // for operations long enough that the two clock reads do not matter.
+    private double iteration(Runnable setup, Op op) {
+        long deadline = System.nanoTime() + iterationMs * 1_000_000;
+        long ops = 0;
+        long start = System.nanoTime();
+        long now;
+        if (setup == null) {
+            do {
+                sink = op.run();
+                ops++;
+                now = System.nanoTime();
+            } while (now < deadline);
+            return (double) (now - start) / ops;
+        }
+        long timed = 0;
+        do {
+            setup.run();
+            long opStart = System.nanoTime();
+            sink = op.run();
+            now = System.nanoTime();
+            timed += now - opStart;
+            ops++;
+        } while (now < deadline);
+        return (double) timed / ops;
+    }
+
+    void run(int size, long seed, double density, String only) {
+        byte[] text = Generator.generate(size, seed, density).getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer mapped = ByteBuffer.allocateDirect(text.length);
+        mapped.put(text).flip();
+        Main.InputData input = Main.parseInput(mapped.duplicate());
+        Problem problem = Problem.build(input.size, input.landscape, input.tilesDict, input.targets);
+
+        if (only == null || only.equals("parseInput")) {
+            measure("parseInput", size, () -> Main.parseInput(mapped.duplicate()));
+        }
+        if (only == null || only.equals("buildTables")) {
+            measure("buildTables", size, () -> Problem.build(input.size, input.landscape, input.tilesDict, input.targets));
+        }
+        if (only == null || only.equals("propagate")) {
+            // One assign, propagate and undo cycle on a random tile, the work ac3 used to do per node.
+            Solver solver = new Solver(problem, false);
+            solver.propagate();
+            SplittableRandom random = new SplittableRandom(seed);
+            measure("propagate", size, () -> {
+                int var = random.nextInt(problem.numTiles);
+                int val = solver.valueOrder[var * Problem.TYPES + random.nextInt(Problem.TYPES)];
+                if (solver.push(var, val)) {
+                    solver.pop();
+                    return Boolean.TRUE;
+                }
+                return Boolean.FALSE;
+            });
+        }
+        if (only == null || only.equals("solve")) {
+            // One cache for all solves, emptied untimed before each, so the score is the search
+            // and not the allocation of a fresh table.
+            NogoodCache nogoods = new NogoodCache((long) NogoodCache.DEFAULT_MB << 20);
+            measure("solve", size, nogoods::clear, () -> {
+                Solver solver = new Solver(problem);
+                solver.nogoods = nogoods;
+                long deadline = System.nanoTime() + solveLimitMs * 1_000_000;
+                solver.stop = () -> System.nanoTime() > deadline;
+                int[] solution = solver.solve();
+                if (solver.aborted) {
+                    System.out.printf("solve        %6d  timed out after %d ms%n", size, solveLimitMs);
+                }
+                return solution;
+            });
+        }
+    }
+
+    public static void main(String[] args) {
+        Benchmark bench = new Benchmark();
+        List<Integer> sizes = new ArrayList<>(List.of(20, 100, 200, 400));
+        long seed = 1;
+        double density = Generator.DEFAULT_DENSITY;
+        String only = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--sizes":
+                    sizes.clear();
+                    for (String part : args[++i].split(",")) {
+                        sizes.add(Integer.parseInt(part.trim()));
+                    }
+                    break;
+                case "--seed":
+                    seed = Long.parseLong(args[++i]);
+                    break;
+                case "--density":
+                    density = Double.parseDouble(args[++i]);
+                    break;
+                case "--warmup":
+                    bench.warmup = Integer.parseInt(args[++i]);
+                    break;
+                case "--iterations":
+                    bench.iterations = Integer.parseInt(args[++i]);
+                    break;
+                case "--iteration-ms":
+                    bench.iterationMs = Long.parseLong(args[++i]);
+                    break;
+                case "--solve-limit-ms":
+                    bench.solveLimitMs = Long.parseLong(args[++i]);
+                    break;
+                case "--only":
+                    only = args[++i];
+                    if (!List.of(BENCHMARKS).contains(only)) {
+                        System.err.println("Unknown benchmark: " + only + ", expected one of " + List.of(BENCHMARKS));
+                        return;
+                    }
+                    break;
+                default:
+                    System.err.println("Unknown option: " + args[i]);
+                    return;
+            }
+        }
+        System.out.printf("# seed %d, density %.2f, %d warmup + %d measurement iterations of %d ms%n",
+                seed, density, bench.warmup, bench.iterations, bench.iterationMs);
+        System.out.printf("%-12s %6s  %4s  %3s  %14s   %12s  %s%n", "Benchmark", "size", "mode", "cnt", "score", "error", "units");
+        for (int size : sizes) {
+            bench.run(size, seed, density, only);
+        }
+    }
+}
@@ -0,0 +1,158 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+// Snapshot of a running search, enough to continue it in another process. The search is iterative,
+// so its whole frontier is the current path: per depth, the tile branched on and the cursor into
+// its value order (the value on the path is the one just before the cursor, and the values after
+// it are still to be tried). The remaining inventory and a fingerprint of the problem are stored
+// to check the file against the problem it is resumed on; everything else is rebuilt by replaying
+// the path. The nogood cache is not saved and starts empty, which costs speed but not results.
+final class Checkpoint {
+
+    static final int MAGIC = 0x54434B50;
+    static final int FORMAT_VERSION = 1;
+    // Share of the search time checkpoint writes may take, and the least time between two writes.
+    static final double DEFAULT_BUDGET = 0.01;
+    static final long DEFAULT_INTERVAL_NANOS = 60_000_000_000L;
+    private static final int HEADER_BYTES = 4 * Integer.BYTES + 2 * Long.BYTES + Problem.TYPES * Integer.BYTES;
+
+    final int numTiles;
+    final long fingerprint;
+    final long nodes;
+    final int[] remaining;
+    final int[] vars;
+    final byte[] cursors;
+
+    Checkpoint(int numTiles, long fingerprint, long nodes, int[] remaining, int[] vars, byte[] cursors) {
+        this.numTiles = numTiles;
+        this.fingerprint = fingerprint;
+        this.nodes = nodes;
+        this.remaining = remaining;
+        this.vars = vars;
+        this.cursors = cursors;
+    }
+
+    int depth() {
+        return vars.length;
+    }
+
+    // Hash of everything that shapes the search: contributions, class chains, inventory and targets.
+    static long fingerprint(Problem problem) {
+        long h = Solver.mix(problem.numTiles);
+        for (byte b : problem.contrib) {
+            h = Solver.mix(h + b);
+        }
+        for (int prev : problem.prevInClass) {
+            h = Solver.mix(h + prev);
+        }
+        for (int count : problem.inventory) {
+            h = Solver.mix(h + count);
+        }
+        for (int target : problem.targets) {
+            h = Solver.mix(h + target);
+        }
+        return h;
+    }
+
+    void write(Path path) throws IOException {
+        int depth = depth();
+        ByteBuffer buf = ByteBuffer.allocate(HEADER_BYTES + depth * (Integer.BYTES + 1));
+        buf.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(numTiles);
+        buf.putLong(fingerprint).putLong(nodes);
+        for (int count : remaining) {
+            buf.putInt(count);
+        }
+        buf.putInt(depth);
+        for (int var : vars) {
+            buf.putInt(var);
+        }
+        buf.put(cursors);
+        buf.flip();
+        // Written next to the target and moved over it, so a kill mid-write leaves the previous
+        // checkpoint intact.
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buf.hasRemaining()) {
+                channel.write(buf);
+            }
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static Checkpoint read(Path path) throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(path));
+        if (buf.remaining() < HEADER_BYTES || buf.getInt() != MAGIC) {
+            throw new IOException("Not a checkpoint file: " + path);
+        }
+        int version = buf.getInt();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported checkpoint version " + version + ": " + path);
+        }
+        int numTiles = buf.getInt();
+        long fingerprint = buf.getLong();
+        long nodes = buf.getLong();
+        int[] remaining = new int[Problem.TYPES];
+        for (int t = 0; t < Problem.TYPES; t++) {
+            remaining[t] = buf.getInt();
+        }
+        int depth = buf.getInt();
+        if (depth < 0 || depth > numTiles || buf.remaining() != depth * (Integer.BYTES + 1)) {
+            throw new IOException("Truncated checkpoint file: " + path);
+        }
+        int[] vars = new int[depth];
+        for (int d = 0; d < depth; d++) {
+            vars[d] = buf.getInt();
+        }
+        byte[] cursors = new byte[depth];
+        buf.get(cursors);
+        return new Checkpoint(numTiles, fingerprint, nodes, remaining, vars, cursors);
+    }
+
+    // Writes a solver's checkpoints to a file while it searches, polled with the stop condition.
+    // After a write that took w, the next one waits at least w / budget, so writing takes at most
+    // that share of the search time however large the path gets.
+    static final class Writer {
+        final Path path;
+        final double budget;
+        final long intervalNanos;
+        private final long fingerprint;
+        private long nextWrite;
+        // Checkpoints written and the time spent writing them.
+        int writes;
+        long writeNanos;
+        // The error that stopped further writes, or null.
+        IOException failure;
+
+        Writer(Path path, Problem problem, double budget, long intervalNanos) {
+            this.path = path;
+            this.budget = budget;
+            this.intervalNanos = intervalNanos;
+            this.fingerprint = fingerprint(problem);
+            this.nextWrite = System.nanoTime() + intervalNanos;
+        }
+
+        // Called between nodes; writes the solver's current path if a write is due.
+        void poll(Solver solver) {
+            long now = System.nanoTime();
+            if (failure != null || now < nextWrite) {
+                return;
+            }
+            try {
+                solver.checkpoint(fingerprint).write(path);
+            } catch (IOException e) {
+                failure = e;
+                return;
+            }
+            long spent = System.nanoTime() - now;
+            writes++;
+            writeNanos += spent;
+            nextWrite = now + spent + Math.max(intervalNanos, (long) (spent / budget));
+        }
+    }
+}
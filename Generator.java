@@ -0,0 +1,84 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.SplittableRandom;
+
+// Seeded generator of random tile placement problems in the tilesproblem.txt format.
+// A random placement is planted first and the inventory and targets are taken from it, so every
+// generated problem has at least one solution. The same (size, seed, density) always gives the
+// same file.
+public class Generator {
+
+    static final double DEFAULT_DENSITY = 0.3;
+
+    // Builds the text of a size x size problem where each cell holds a bush with the given probability.
+    static String generate(int size, long seed, double density) {
+        SplittableRandom random = new SplittableRandom(seed);
+        byte[] landscape = new byte[size * size];
+        for (int i = 0; i < landscape.length; i++) {
+            if (random.nextDouble() < density) {
+                landscape[i] = (byte) (1 + random.nextInt(Problem.COLORS));
+            }
+        }
+
+        int tileCols = size / Main.TILE_SIZE;
+        int numTiles = tileCols * tileCols;
+        int[] inventory = new int[Problem.TYPES];
+        int[] targets = new int[Problem.COLORS];
+        for (int idx = 0; idx < numTiles; idx++) {
+            TileType type = TileType.VALUES[random.nextInt(Problem.TYPES)];
+            inventory[type.ordinal()]++;
+            int startRow = (idx / tileCols) * Main.TILE_SIZE;
+            int startCol = (idx % tileCols) * Main.TILE_SIZE;
+            for (int i = 0; i < Main.TILE_SIZE; i++) {
+                for (int j = 0; j < Main.TILE_SIZE; j++) {
+                    int color = landscape[(startRow + i) * size + startCol + j];
+                    if (color != 0 && type.pattern[i][j] == 0) {
+                        targets[color - 1]++;
+                    }
+                }
+            }
+        }
+
+        StringBuilder sb = new StringBuilder(size * (size * 2 + 1) + 256);
+        sb.append("# Landscape\n");
+        for (int r = 0; r < size; r++) {
+            for (int i = 0; i < size; i++) {
+                int color = landscape[r * size + i];
+                sb.append(color == 0 ? ' ' : (char) ('0' + color)).append(' ');
+            }
+            sb.append('\n');
+        }
+        sb.append("\n# Tiles: \n{");
+        for (int t = Problem.TYPES - 1; t >= 0; t--) {
+            sb.append(TileType.VALUES[t].name()).append('=').append(inventory[t]);
+            sb.append(t > 0 ? ", " : "}\n");
+        }
+        sb.append("\n# Targets: \n");
+        for (int c = 0; c < Problem.COLORS; c++) {
+            sb.append(c + 1).append(':').append(targets[c]).append('\n');
+        }
+        return sb.toString();
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.err.println("Usage: java Generator size seed [density] [out-file]");
+            return;
+        }
+        int size = Integer.parseInt(args[0]);
+        long seed = Long.parseLong(args[1]);
+        double density = args.length > 2 ? Double.parseDouble(args[2]) : DEFAULT_DENSITY;
+        String text = generate(size, seed, density);
+        if (args.length > 3) {
+            try {
+                Files.write(Paths.get(args[3]), text.getBytes(StandardCharsets.US_ASCII));
+            } catch (IOException e) {
+                System.err.println("Error writing the file: " + e.getMessage());
+            }
+        } else {
+            System.out.print(text);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+import java.util.Arrays;
+
+// Bounding stage over the linear relaxation of the remaining placement: every free tile takes a
+// fractional mix of the types left in its domain, the mixes must add up to the remaining color
+// deficits exactly and stay within the remaining inventory. Unlike the per-color bounds in Solver,
+// this sees all four colors and the inventory at once, so it can tell that two colors are both
+// counting on the same scarce tiles.
+//
+// The relaxation is checked through its Lagrangian dual. For multipliers y (one per color) and
+// z >= 0 (one per type), the smallest value of y . colors + z . types the free tiles can reach,
+// minus y . deficits + z . inventory, is positive only if no fractional placement exists (Farkas),
+// so any such multipliers refute the node. They are searched for by a few subgradient steps,
+// starting from the multipliers of the nearest ancestor the stage ran at. A refutation is always
+// sound; a missed one only costs the pruning, so the stage never changes which solution is found.
+final class LinearRelaxation {
+
+    static final int DEFAULT_ITERATIONS = 24;
+    private static final int WIDTH = Problem.COLORS + Problem.TYPES;
+    // The dual value is scale-free, so steps aim it at this level and a refutation needs it above
+    // EPSILON to rule out rounding.
+    private static final double LEVEL = 1.0;
+    private static final double EPSILON = 1e-6;
+    static final int MAX_BACKOFF = 256;
+
+    final Problem problem;
+    // Nodes between two runs, and subgradient steps per run.
+    final int interval;
+    final int iterations;
+
+    // Runs and refuted nodes so far.
+    long runs;
+    long cuts;
+
+    // Multipliers left by the run at each depth (colors then types), and the solver's node count
+    // when that run happened, which tells whether the node is still on the current path.
+    private final double[] saved;
+    private final long[] stamp;
+    private final double[] multipliers = new double[WIDTH];
+    private final double[] gradient = new double[WIDTH];
+    private int countdown;
+    // Current gap between runs: interval after a cut, doubling up to MAX_BACKOFF times that
+    // while runs keep finding the relaxation feasible.
+    private int gap;
+
+    LinearRelaxation(Problem problem, int interval, int iterations) {
+        this.problem = problem;
+        this.interval = interval;
+        this.iterations = iterations;
+        this.saved = new double[(problem.numTiles + 1) * WIDTH];
+        this.stamp = new long[problem.numTiles + 1];
+        Arrays.fill(stamp, -1);
+        this.countdown = interval;
+        this.gap = interval;
+    }
+
+    // Called after a successful propagation; returns false if this is one of the nodes the stage
+    // runs at and the relaxation of the remaining problem is infeasible.
+    boolean admits(Solver solver) {
+        if (--countdown > 0 || solver.freeCount == 0) {
+            return true;
+        }
+        runs++;
+        int depth = solver.depth;
+        warmStart(solver, depth);
+        boolean refuted = false;
+        for (int i = 0; i < iterations; i++) {
+            double value = evaluate(solver);
+            if (value > EPSILON) {
+                refuted = true;
+                break;
+            }
+            double norm = 0;
+            for (int k = 0; k < WIDTH; k++) {
+                norm += gradient[k] * gradient[k];
+            }
+            if (norm == 0) {
+                // The minimizing choice meets every constraint, so the relaxation is feasible.
+                break;
+            }
+            double step = (LEVEL - value) / norm;
+            for (int k = 0; k < WIDTH; k++) {
+                multipliers[k] += step * gradient[k];
+            }
+            for (int k = Problem.COLORS; k < WIDTH; k++) {
+                multipliers[k] = Math.max(0, multipliers[k]);
+            }
+        }
+        System.arraycopy(multipliers, 0, saved, depth * WIDTH, WIDTH);
+        stamp[depth] = solver.nodes;
+        if (refuted) {
+            cuts++;
+            gap = interval;
+        } else {
+            gap = (int) Math.min(2L * gap, (long) interval * MAX_BACKOFF);
+        }
+        countdown = gap;
+        return !refuted;
+    }
+
+    // Loads the multipliers of the deepest run on the current path. A node at depth d was reached
+    // when the solver's node count was stamp[d], and stays on the path while the choice point
+    // opened there (at that same count) does.
+    private void warmStart(Solver solver, int depth) {
+        for (int d = depth - 1; d >= 0; d--) {
+            if (stamp[d] >= 0 && stamp[d] == solver.startNodes[d]) {
+                System.arraycopy(saved, d * WIDTH, multipliers, 0, WIDTH);
+                return;
+            }
+        }
+        Arrays.fill(multipliers, 0);
+    }
+
+    // Dual value at the current multipliers, leaving a subgradient in gradient: each free tile's
+    // cheapest type, summed, minus the deficits and inventory.
+    private double evaluate(Solver solver) {
+        byte[] contrib = problem.contrib;
+        double value = 0;
+        for (int c = 0; c < Problem.COLORS; c++) {
+            int deficit = problem.targets[c] - solver.current[c];
+            value -= multipliers[c] * deficit;
+            gradient[c] = -deficit;
+        }
+        for (int t = 0; t < Problem.TYPES; t++) {
+            value -= multipliers[Problem.COLORS + t] * solver.remaining[t];
+            gradient[Problem.COLORS + t] = -solver.remaining[t];
+        }
+        for (int i = 0; i < solver.freeCount; i++) {
+            int v = solver.free[i];
+            int mask = solver.domain[v];
+            double cheapest = Double.POSITIVE_INFINITY;
+            int chosen = -1;
+            for (int t = 0; t < Problem.TYPES; t++) {
+                if ((mask & (1 << t)) == 0) continue;
+                int base = (v * Problem.TYPES + t) * Problem.COLORS;
+                double cost = multipliers[Problem.COLORS + t];
+                for (int c = 0; c < Problem.COLORS; c++) {
+                    cost += multipliers[c] * contrib[base + c];
+                }
+                if (cost < cheapest) {
+                    cheapest = cost;
+                    chosen = t;
+                }
+            }
+            value += cheapest;
+            int base = (v * Problem.TYPES + chosen) * Problem.COLORS;
+            for (int c = 0; c < Problem.COLORS; c++) {
+                gradient[c] += contrib[base + c];
+            }
+            gradient[Problem.COLORS + chosen]++;
+        }
+        return value;
+    }
+}
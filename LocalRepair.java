@@ -0,0 +1,219 @@
+import java.util.HashMap;
+import java.util.Map;
+
+// Re-solves a problem starting from a previous solution, for when only the targets or the tile
+// counts changed. The old placement is first made to fit the new inventory, then repaired by
+// steepest-descent local search on the L1 distance to the targets. A move either changes one tile
+// to a type that is still in stock or swaps the types of two tiles, which keeps the counts. If the
+// search gets stuck or runs out of steps, the full search runs instead.
+//
+// Only the distinct contribution changes matter when scoring a move, and a landscape has few of
+// them, so candidate moves are grouped by their change vector with one tile standing for each
+// group. A step then costs O(tiles) to rebuild the groups plus the group pairs to score swaps.
+final class LocalRepair {
+
+    static final int DEFAULT_MAX_STEPS = 1000;
+    // A change vector is packed one byte per color, biased by OFFSET. One tile changes a color by
+    // at most CELLS and a swap by twice that, well inside a byte.
+    private static final int LANE = 8;
+    private static final int LANE_MASK = (1 << LANE) - 1;
+    private static final int OFFSET = 4 * Problem.CELLS;
+    // The packed form of no change.
+    private static final int OFFSETS = OFFSET | OFFSET << LANE | OFFSET << 2 * LANE | OFFSET << 3 * LANE;
+
+    final Problem problem;
+    final int maxSteps;
+    final long cacheBytes;
+    // Instrumentation for the fallback search, or null for none.
+    SearchStats stats;
+
+    // Moves made by the last call, and whether the repair alone met the targets.
+    int steps;
+    boolean repaired;
+
+    private final int[] assignment;
+    private final int[] left = new int[Problem.TYPES];
+    private final int[] deficit = new int[Problem.COLORS];
+    // Per (from, to) type pair: change vector -> a tile of type `from` that changes by it.
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private final Map<Integer, Integer>[] moves = new HashMap[Problem.TYPES * Problem.TYPES];
+
+    LocalRepair(Problem problem, int maxSteps, long cacheBytes) {
+        this.problem = problem;
+        this.maxSteps = maxSteps;
+        this.cacheBytes = cacheBytes;
+        this.assignment = new int[problem.numTiles];
+        for (int i = 0; i < moves.length; i++) {
+            moves[i] = new HashMap<>();
+        }
+    }
+
+    // Returns the type ordinal per tile, or null if there is no solution. Tiles of the previous
+    // solution may be Solver.UNASSIGNED; a solution of the wrong length is ignored.
+    int[] solve(int[] previous) {
+        int[] solution = previous != null && previous.length == problem.numTiles ? repair(previous) : null;
+        repaired = solution != null;
+        if (solution != null) {
+            return solution;
+        }
+        Solver solver = new Solver(problem);
+        solver.nogoods = cacheBytes > 0 ? new NogoodCache(cacheBytes) : null;
+        solver.stats = stats;
+        return solver.solve();
+    }
+
+    // Local search from the previous solution; returns the repaired one, or null if it got stuck.
+    int[] repair(int[] previous) {
+        steps = 0;
+        System.arraycopy(previous, 0, assignment, 0, assignment.length);
+        System.arraycopy(problem.inventory, 0, left, 0, Problem.TYPES);
+        System.arraycopy(problem.targets, 0, deficit, 0, Problem.COLORS);
+        for (int v = 0; v < assignment.length; v++) {
+            if (assignment[v] != Solver.UNASSIGNED) {
+                place(v, assignment[v], 1);
+            }
+        }
+        if (!fitInventory()) {
+            return null;
+        }
+        while (distance(OFFSETS) > 0) {
+            if (steps++ >= maxSteps || !improve()) {
+                return null;
+            }
+        }
+        return assignment.clone();
+    }
+
+    // Gives every unplaced tile a type and moves tiles off types used beyond the new inventory,
+    // each time picking the type that leaves the sums closest to the targets.
+    private boolean fitInventory() {
+        for (int v = 0; v < assignment.length; v++) {
+            int from = assignment[v];
+            if (from != Solver.UNASSIGNED && left[from] >= 0) continue;
+            int chosen = Solver.UNASSIGNED;
+            int chosenDistance = Integer.MAX_VALUE;
+            for (int t = 0; t < Problem.TYPES; t++) {
+                if (t == from || left[t] <= 0) continue;
+                int d = from == Solver.UNASSIGNED ? distanceAfterPlacing(v, t) : distance(change(v, from, t));
+                if (d < chosenDistance) {
+                    chosenDistance = d;
+                    chosen = t;
+                }
+            }
+            if (chosen == Solver.UNASSIGNED) {
+                return false;
+            }
+            if (from != Solver.UNASSIGNED) {
+                place(v, from, -1);
+            }
+            place(v, chosen, 1);
+            steps++;
+        }
+        return true;
+    }
+
+    // Applies the single change or swap that lowers the distance the most. Returns false if none does.
+    private boolean improve() {
+        for (Map<Integer, Integer> group : moves) {
+            group.clear();
+        }
+        for (int v = 0; v < assignment.length; v++) {
+            int from = assignment[v];
+            for (int to = 0; to < Problem.TYPES; to++) {
+                if (to != from) {
+                    moves[from * Problem.TYPES + to].putIfAbsent(change(v, from, to), v);
+                }
+            }
+        }
+
+        int best = distance(OFFSETS);
+        int bestTile = -1;
+        int bestTo = -1;
+        int otherTile = -1;
+        for (int from = 0; from < Problem.TYPES; from++) {
+            for (int to = 0; to < Problem.TYPES; to++) {
+                if (from == to) continue;
+                Map<Integer, Integer> forward = moves[from * Problem.TYPES + to];
+                if (left[to] > 0) {
+                    for (Map.Entry<Integer, Integer> move : forward.entrySet()) {
+                        int d = distance(move.getKey());
+                        if (d < best) {
+                            best = d;
+                            bestTile = move.getValue();
+                            bestTo = to;
+                            otherTile = -1;
+                        }
+                    }
+                }
+                if (from > to) continue;
+                Map<Integer, Integer> backward = moves[to * Problem.TYPES + from];
+                for (Map.Entry<Integer, Integer> move : forward.entrySet()) {
+                    for (Map.Entry<Integer, Integer> back : backward.entrySet()) {
+                        int d = distance(add(move.getKey(), back.getKey()));
+                        if (d < best) {
+                            best = d;
+                            bestTile = move.getValue();
+                            bestTo = to;
+                            otherTile = back.getValue();
+                        }
+                    }
+                }
+            }
+        }
+        if (bestTile < 0) {
+            return false;
+        }
+        int from = assignment[bestTile];
+        place(bestTile, from, -1);
+        if (otherTile >= 0) {
+            place(otherTile, bestTo, -1);
+            place(otherTile, from, 1);
+        }
+        place(bestTile, bestTo, 1);
+        return true;
+    }
+
+    // Adds (sign = 1) or removes (sign = -1) a tile of the given type.
+    private void place(int var, int type, int sign) {
+        assignment[var] = sign > 0 ? type : Solver.UNASSIGNED;
+        left[type] -= sign;
+        int base = (var * Problem.TYPES + type) * Problem.COLORS;
+        for (int c = 0; c < Problem.COLORS; c++) {
+            deficit[c] -= sign * problem.contrib[base + c];
+        }
+    }
+
+    // L1 distance to the targets after applying a packed change vector.
+    private int distance(int change) {
+        int d = 0;
+        for (int c = 0; c < Problem.COLORS; c++) {
+            d += Math.abs(deficit[c] - (((change >>> (c * LANE)) & LANE_MASK) - OFFSET));
+        }
+        return d;
+    }
+
+    private int distanceAfterPlacing(int var, int type) {
+        int base = (var * Problem.TYPES + type) * Problem.COLORS;
+        int d = 0;
+        for (int c = 0; c < Problem.COLORS; c++) {
+            d += Math.abs(deficit[c] - problem.contrib[base + c]);
+        }
+        return d;
+    }
+
+    // Packed change in visible bushes when a tile goes from one type to another.
+    private int change(int var, int from, int to) {
+        int packed = 0;
+        for (int c = 0; c < Problem.COLORS; c++) {
+            int delta = problem.contrib[(var * Problem.TYPES + to) * Problem.COLORS + c]
+                    - problem.contrib[(var * Problem.TYPES + from) * Problem.COLORS + c];
+            packed |= (delta + OFFSET) << (c * LANE);
+        }
+        return packed;
+    }
+
+    // Sum of two packed changes; lanes never carry, so this is plain addition minus one bias.
+    private static int add(int a, int b) {
+        return a + b - OFFSETS;
+    }
+}
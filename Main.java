@@ -1,8 +1,14 @@
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.function.Consumer;
 
 public class Main {
 
@@ -10,350 +16,595 @@ public class Main {
 
     // Container for the parsed input data.
     static class InputData {
-        int[][] landscape;
+        // The landscape is size x size cells, row-major, one color (0 = no bush) per byte.
+        int size;
+        byte[] landscape;
         Map<String, Integer> tilesDict;
         Map<Integer, Integer> targets;
 
-        InputData(int[][] landscape, Map<String, Integer> tilesDict, Map<Integer, Integer> targets) {
+        InputData(int size, byte[] landscape, Map<String, Integer> tilesDict, Map<Integer, Integer> targets) {
+            this.size = size;
             this.landscape = landscape;
             this.tilesDict = tilesDict;
             this.targets = targets;
         }
     }
 
-    static InputData parseInput(String inputText) {
-    // Split sections by "# "
-    String[] sections = inputText.split("# ");
-    // sections[1] is the landscape section
-    String[] landscapeLines = sections[1].split("\n");
-    int size = landscapeLines.length - 2; // first line is header
-    System.out.println(size + "x" + size);
-
-    int[][] landscape = new int[size][size];
-    int expectedLength = size * 2; // expected row length based on fixed-position indexing
-
-    for (int j = 0; j < size; j++) {
-        String row = landscapeLines[j + 1];
-        // Pad the row with spaces if it's shorter than expected.
-        if (row.length() < expectedLength) {
-            row = String.format("%-" + expectedLength + "s", row);
-        }
-        for (int i = 0; i < size; i++) {
-            char ch = row.charAt(i * 2);
-            int value = (ch == ' ') ? 0 : Character.getNumericValue(ch);
-            landscape[j][i] = value;
+    // Parses a problem file through a memory-mapped view of it. A malformed landscape is reported
+    // as an IOException.
+    static InputData parseInput(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return parseInput(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage() + ": " + path, e);
         }
     }
-    
-    for (int i = 0; i < landscape.length; i++) {
-        for (int j = 0; j < landscape[i].length; j++) {
-            System.out.print(landscape[i][j] + " ");
-        }
-        System.out.println(); // New line after each row
-    }
 
-    // Parse the tiles dictionary from section[2]
-    String tilesSection = sections[2].trim();
-    String[] tilesLines = tilesSection.split("\n");
-    // Assume the second line contains the dictionary data.
-    String tilesLine = tilesLines[1].trim();
-    // Remove surrounding braces "{}"
-    tilesLine = tilesLine.replace("{", "").replace("}", "");
-    Map<String, Integer> tilesDict = new HashMap<>();
-    for (String part : tilesLine.split(",")) {
-        String[] keyVal = part.split("=");
-        if (keyVal.length < 2) continue;
-        String key = keyVal[0].trim();
-        int val = Integer.parseInt(keyVal[1].trim());
-        tilesDict.put(key, val);
+    static InputData parseInput(ByteBuffer buf) {
+        return parseInput(buf, Integer.MAX_VALUE);
     }
 
-    // Parse targets from section[3]
-    String targetsSection = sections[3].trim();
-    String[] targetsLines = targetsSection.split("\n");
-    Map<Integer, Integer> targets = new HashMap<>();
-    // Skip the header (first line)
-    for (int i = 1; i < targetsLines.length; i++) {
-        String targetLine = targetsLines[i].trim();
-        if (targetLine.isEmpty()) continue;
-        String[] parts = targetLine.split(":");
-        if (parts.length < 2) continue;
-        int color = Integer.parseInt(parts[0].trim());
-        int count = Integer.parseInt(parts[1].trim());
-        targets.put(color, count);
-    }
-    return new InputData(landscape, tilesDict, targets);
-}
+    // Parses the three "# " sections (landscape, tiles, targets) in a single pass over the bytes.
+    // Landscape cells sit at every other column; a space or any non-digit is an empty cell.
+    // Every line up to the next header is a landscape row, except trailing blank lines shorter
+    // than a full row, and the landscape is as wide as it is tall; shorter rows are padded with empty cells. Throws
+    // IllegalArgumentException for a landscape too small for one tile, a row longer than the
+    // landscape is tall or a landscape of more than maxCells cells.
+    static InputData parseInput(ByteBuffer buf, long maxCells) {
+        int section = 0;
+        int[] rowStart = new int[64];
+        int[] rowEnd = new int[64];
+        int rows = 0;
+        Map<String, Integer> tilesDict = new HashMap<>();
+        Map<Integer, Integer> targets = new HashMap<>();
 
-    // Returns a patch (submatrix) of the landscape for the given tile position.
-    static int[][] getPatch(int[][] landscape, int tileRow, int tileCol) {
-        int startRow = tileRow * TILE_SIZE;
-        int startCol = tileCol * TILE_SIZE;
-        int[][] patch = new int[TILE_SIZE][TILE_SIZE];
-        for (int i = 0; i < TILE_SIZE; i++) {
-            for (int j = 0; j < TILE_SIZE; j++) {
-                patch[i][j] = landscape[startRow + i][startCol + j];
+        int limit = buf.limit();
+        int pos = buf.position();
+        while (pos < limit) {
+            int start = pos;
+            int end = start;
+            while (end < limit && buf.get(end) != '\n') {
+                end++;
             }
-        }
-        return patch;
-    }
-
-    // Computes the contribution for a given patch and tile type.
-    static Map<Integer, Integer> computeContribution(int[][] patch, String tileType) {
-        Map<Integer, Integer> contrib = new HashMap<>();
-        if (tileType.equals("FULL_BLOCK")) {
-            return contrib; // no contribution
-        } else if (tileType.equals("OUTER_BOUNDARY")) {
-            for (int i : new int[]{1, 2}) {
-                for (int j : new int[]{1, 2}) {
-                    int c = patch[i][j];
-                    if (c != 0) {
-                        contrib.put(c, contrib.getOrDefault(c, 0) + 1);
-                    }
-                }
+            pos = end + 1;
+            if (end > start && buf.get(end - 1) == '\r') {
+                end--;
             }
-            return contrib;
-        } else if (tileType.equals("EL_SHAPE")) {
-            int[][] pattern = {
-                {1, 0, 0, 0},
-                {1, 0, 0, 0},
-                {1, 0, 0, 0},
-                {1, 1, 1, 1}
-            };
-            for (int i = 0; i < TILE_SIZE; i++) {
-                for (int j = 0; j < TILE_SIZE; j++) {
-                    if (pattern[i][j] == 0) {
-                        int c = patch[i][j];
-                        if (c != 0) {
-                            contrib.put(c, contrib.getOrDefault(c, 0) + 1);
-                        }
-                    }
+            if (end > start && buf.get(start) == '#') {
+                section++;
+                continue;
+            }
+            if (section == 1) {
+                if (rows == rowStart.length) {
+                    rowStart = Arrays.copyOf(rowStart, rows * 2);
+                    rowEnd = Arrays.copyOf(rowEnd, rows * 2);
                 }
+                rowStart[rows] = start;
+                rowEnd[rows] = end;
+                rows++;
+            } else if (section == 2) {
+                parseTiles(buf, start, end, tilesDict);
+            } else if (section == 3) {
+                parseTarget(buf, start, end, targets);
             }
-            return contrib;
         }
-        return contrib;
-    }
-
-    // AC3-like consistency check.
-    static boolean ac3(Map<Integer, List<String>> domains,
-                       Map<Integer, String> assignment,
-                       Map<Integer, Map<String, Map<Integer, Integer>>> tileContrib,
-                       Map<Integer, Integer> targets,
-                       int numTiles) {
-        List<Integer> unassigned = new ArrayList<>();
-        for (int v = 0; v < numTiles; v++) {
-            if (!assignment.containsKey(v)) {
-                unassigned.add(v);
-            }
+        // Drops the blank line (or lines) before the next header. A last row of empty cells
+        // written out in full is as long as the longest row (give or take its final space) and stays.
+        int longest = 0;
+        for (int r = 0; r < rows; r++) {
+            longest = Math.max(longest, rowEnd[r] - rowStart[r]);
         }
-
-        // current contributions for colors 1,2,3,4
-        Map<Integer, Integer> current = new HashMap<>();
-        for (int c = 1; c <= 4; c++) {
-            current.put(c, 0);
-        }
-        for (Map.Entry<Integer, String> entry : assignment.entrySet()) {
-            int v = entry.getKey();
-            String ttype = entry.getValue();
-            Map<Integer, Integer> contribMap = tileContrib.get(v).get(ttype);
-            for (Map.Entry<Integer, Integer> ce : contribMap.entrySet()) {
-                int color = ce.getKey();
-                if (color == 0) continue;
-                current.put(color, current.get(color) + ce.getValue());
-            }
+        while (rows > 0 && isBlank(buf, rowStart[rows - 1], rowEnd[rows - 1])
+                && rowEnd[rows - 1] - rowStart[rows - 1] < longest - 1) {
+            rows--;
         }
 
-        // For each unassigned tile, compute min and max possible contributions.
-        Map<Integer, Integer> minAdd = new HashMap<>();
-        Map<Integer, Integer> maxAdd = new HashMap<>();
-        for (int c = 1; c <= 4; c++) {
-            minAdd.put(c, 0);
-            maxAdd.put(c, 0);
-        }
-        for (int v : unassigned) {
-            Map<Integer, Integer> mins = new HashMap<>();
-            Map<Integer, Integer> maxs = new HashMap<>();
-            for (int c = 1; c <= 4; c++) {
-                mins.put(c, Integer.MAX_VALUE);
-                maxs.put(c, Integer.MIN_VALUE);
-            }
-            for (String val : domains.get(v)) {
-                Map<Integer, Integer> contrib = tileContrib.get(v).get(val);
-                for (int c = 1; c <= 4; c++) {
-                    int cnt = contrib.getOrDefault(c, 0);
-                    mins.put(c, Math.min(mins.get(c), cnt));
-                    maxs.put(c, Math.max(maxs.get(c), cnt));
-                }
+        int size = rows;
+        if (size < TILE_SIZE) {
+            throw new IllegalArgumentException("No landscape with at least one tile");
+        }
+        if ((long) size * size > maxCells) {
+            throw new IllegalArgumentException("Landscape of " + size + "x" + size + " is too large");
+        }
+        byte[] landscape = new byte[size * size];
+        for (int r = 0; r < size; r++) {
+            // Every cell is written as a character and a space.
+            if (rowEnd[r] - rowStart[r] > 2 * size) {
+                throw new IllegalArgumentException("Landscape row " + (r + 1) + " has more than " + size + " cells");
             }
-            for (int c = 1; c <= 4; c++) {
-                int currentMin = minAdd.get(c);
-                if (mins.get(c) != Integer.MAX_VALUE) {
-                    currentMin += mins.get(c);
+            int offset = r * size;
+            for (int i = 0, p = rowStart[r]; p < rowEnd[r]; i++, p += 2) {
+                byte ch = buf.get(p);
+                if (ch >= '0' && ch <= '9') {
+                    landscape[offset + i] = (byte) (ch - '0');
                 }
-                minAdd.put(c, currentMin);
-
-                int currentMax = maxAdd.get(c);
-                if (maxs.get(c) != Integer.MIN_VALUE) {
-                    currentMax += maxs.get(c);
-                }
-                maxAdd.put(c, currentMax);
             }
         }
-        for (int c = 1; c <= 4; c++) {
-            int totalMin = current.get(c) + minAdd.get(c);
-            int totalMax = current.get(c) + maxAdd.get(c);
-            int target = targets.get(c);
-            if (target < totalMin || target > totalMax) {
+        return new InputData(size, landscape, tilesDict, targets);
+    }
+
+    private static boolean isBlank(ByteBuffer buf, int start, int end) {
+        for (int p = start; p < end; p++) {
+            if (buf.get(p) != ' ') {
                 return false;
             }
         }
         return true;
     }
 
-    // Selects an unassigned variable using MRV (minimum remaining values).
-    static int selectVariable(Map<Integer, String> assignment, Map<Integer, List<String>> domains) {
-        int selected = -1;
-        int minSize = Integer.MAX_VALUE;
-        for (Integer v : domains.keySet()) {
-            if (!assignment.containsKey(v)) {
-                int size = domains.get(v).size();
-                if (size < minSize) {
-                    minSize = size;
-                    selected = v;
+    // Reads NAME=count pairs, e.g. "{EL_SHAPE=5, OUTER_BOUNDARY=10, FULL_BLOCK=10}".
+    private static void parseTiles(ByteBuffer buf, int start, int end, Map<String, Integer> tilesDict) {
+        int p = start;
+        while (p < end) {
+            while (p < end && !isNameChar(buf.get(p))) {
+                p++;
+            }
+            int nameStart = p;
+            while (p < end && isNameChar(buf.get(p))) {
+                p++;
+            }
+            if (p == nameStart) {
+                break;
+            }
+            byte[] name = new byte[p - nameStart];
+            for (int i = 0; i < name.length; i++) {
+                name[i] = buf.get(nameStart + i);
+            }
+            while (p < end && buf.get(p) != '=' && buf.get(p) != ',') {
+                p++;
+            }
+            int comma = p;
+            while (comma < end && buf.get(comma) != ',') {
+                comma++;
+            }
+            if (p < comma) {
+                int value = readNumber(buf, p + 1, comma);
+                if (value >= 0) {
+                    tilesDict.put(new String(name, StandardCharsets.US_ASCII), value);
                 }
             }
+            p = comma;
         }
-        return selected;
     }
 
-    // Orders the domain values for a variable by the sum of contributions (LCV heuristic).
-    static List<String> orderValues(int var, Map<Integer, List<String>> domains,
-                                    Map<Integer, Map<String, Map<Integer, Integer>>> tileContrib) {
-        List<String> values = new ArrayList<>(domains.get(var));
-        values.sort(Comparator.comparingInt(val -> {
-            int sum = 0;
-            for (int cnt : tileContrib.get(var).get(val).values()) {
-                sum += cnt;
-            }
-            return sum;
-        }));
-        return values;
+    // Reads one "color:count" line; lines without a colon are ignored.
+    private static void parseTarget(ByteBuffer buf, int start, int end, Map<Integer, Integer> targets) {
+        int colon = start;
+        while (colon < end && buf.get(colon) != ':') {
+            colon++;
+        }
+        if (colon == end) {
+            return;
+        }
+        int color = readNumber(buf, start, colon);
+        int count = readNumber(buf, colon + 1, end);
+        if (color >= 0 && count >= 0) {
+            targets.put(color, count);
+        }
     }
 
-    // Checks if the global assignment meets the targets.
-    static boolean globalTargetOk(Map<Integer, String> assignment,
-                                  Map<Integer, Map<String, Map<Integer, Integer>>> tileContrib,
-                                  Map<Integer, Integer> targets) {
-        Map<Integer, Integer> total = new HashMap<>();
-        for (int c = 1; c <= 4; c++) {
-            total.put(c, 0);
-        }
-        for (Map.Entry<Integer, String> entry : assignment.entrySet()) {
-            int v = entry.getKey();
-            String ttype = entry.getValue();
-            Map<Integer, Integer> contrib = tileContrib.get(v).get(ttype);
-            for (Map.Entry<Integer, Integer> ce : contrib.entrySet()) {
-                total.put(ce.getKey(), total.get(ce.getKey()) + ce.getValue());
-            }
+    private static boolean isNameChar(byte b) {
+        return (b >= 'A' && b <= 'Z') || (b >= 'a' && b <= 'z') || b == '_';
+    }
+
+    // Reads the first non-negative integer in [from, to), or returns -1 if there is none.
+    private static int readNumber(ByteBuffer buf, int from, int to) {
+        int p = from;
+        while (p < to && (buf.get(p) < '0' || buf.get(p) > '9')) {
+            p++;
         }
-        for (int c = 1; c <= 4; c++) {
-            if (!total.get(c).equals(targets.get(c))) {
-                return false;
-            }
+        if (p == to) {
+            return -1;
         }
-        return true;
+        int value = 0;
+        while (p < to && buf.get(p) >= '0' && buf.get(p) <= '9') {
+            value = value * 10 + (buf.get(p) - '0');
+            p++;
+        }
+        return value;
     }
 
-    // Backtracking search with MRV and LCV heuristics.
-    static Map<Integer, String> backtrack(Map<Integer, String> assignment,
-                                          Map<Integer, List<String>> domains,
-                                          Map<Integer, Map<String, Map<Integer, Integer>>> tileContrib,
-                                          Map<String, Integer> remainingTiles,
-                                          Map<Integer, Integer> targets,
-                                          int numTiles) {
-        if (assignment.size() == numTiles) {
-            return globalTargetOk(assignment, tileContrib, targets) ? assignment : null;
+    // Prints the landscape the way the original parser echoed it.
+    static void echoLandscape(InputData inputData) {
+        int size = inputData.size;
+        StringBuilder sb = new StringBuilder(size * (size * 2 + 1) + 16);
+        sb.append(size).append('x').append(size).append('\n');
+        for (int r = 0; r < size; r++) {
+            for (int i = 0; i < size; i++) {
+                sb.append((char) ('0' + inputData.landscape[r * size + i])).append(' ');
+            }
+            sb.append('\n');
         }
+        System.out.print(sb);
+    }
 
-        int var = selectVariable(assignment, domains);
-        for (String val : orderValues(var, domains, tileContrib)) {
-            if (remainingTiles.getOrDefault(val, 0) <= 0) continue;
-            Map<Integer, String> newAssignment = new HashMap<>(assignment);
-            newAssignment.put(var, val);
-
-            Map<String, Integer> newRemaining = new HashMap<>(remainingTiles);
-            newRemaining.put(val, newRemaining.get(val) - 1);
+    // Solves the constraint satisfaction problem.
+    static Map<Integer, String> solveCSP(InputData inputData) {
+        Problem problem = Problem.build(inputData.size, inputData.landscape, inputData.tilesDict, inputData.targets);
+        Solver solver = new Solver(problem);
+        solver.nogoods = new NogoodCache((long) NogoodCache.DEFAULT_MB << 20);
+        return placementMap(solver.solve());
+    }
 
-            // Deep copy domains.
-            Map<Integer, List<String>> newDomains = new HashMap<>();
-            for (Map.Entry<Integer, List<String>> entry : domains.entrySet()) {
-                newDomains.put(entry.getKey(), new ArrayList<>(entry.getValue()));
+    // Solves again after the targets or tile counts changed, starting from a previous solution
+    // (as returned by solveCSP) and falling back to a full search if local repair fails.
+    static Map<Integer, String> resolveCSP(InputData inputData, Map<Integer, String> previous) {
+        Problem problem = Problem.build(inputData.size, inputData.landscape, inputData.tilesDict, inputData.targets);
+        int[] start = new int[problem.numTiles];
+        Arrays.fill(start, Solver.UNASSIGNED);
+        for (Map.Entry<Integer, String> entry : previous.entrySet()) {
+            TileType type = TileType.fromName(entry.getValue());
+            if (type != null && entry.getKey() >= 0 && entry.getKey() < start.length) {
+                start[entry.getKey()] = type.ordinal();
             }
-            newDomains.put(var, new ArrayList<>(Collections.singletonList(val)));
+        }
+        return placementMap(new LocalRepair(problem, LocalRepair.DEFAULT_MAX_STEPS, (long) NogoodCache.DEFAULT_MB << 20).solve(start));
+    }
+
+    // Tile index -> type name, or null for no solution.
+    private static Map<Integer, String> placementMap(int[] solution) {
+        if (solution == null) {
+            return null;
+        }
+        Map<Integer, String> result = new HashMap<>();
+        for (int v = 0; v < solution.length; v++) {
+            result.put(v, TileType.VALUES[solution[v]].name());
+        }
+        return result;
+    }
 
-            if (ac3(newDomains, newAssignment, tileContrib, targets, numTiles)) {
-                Map<Integer, String> result = backtrack(newAssignment, newDomains, tileContrib, newRemaining, targets, numTiles);
-                if (result != null) {
-                    return result;
+    // Reads "index TYPE" lines into a type ordinal per tile; malformed, out-of-range and repeated
+    // lines are passed to errors. Tiles without a line stay Solver.UNASSIGNED.
+    static int[] readPlacement(Path path, int numTiles, Consumer<String> errors) throws IOException {
+        int[] placement = new int[numTiles];
+        Arrays.fill(placement, Solver.UNASSIGNED);
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.US_ASCII)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty()) continue;
+                int space = line.indexOf(' ');
+                TileType type = space > 0 ? TileType.fromName(line.substring(space + 1).trim()) : null;
+                int tile;
+                try {
+                    tile = space > 0 ? Integer.parseInt(line.substring(0, space)) : -1;
+                } catch (NumberFormatException e) {
+                    tile = -1;
+                }
+                if (type == null || tile < 0) {
+                    errors.accept("line " + lineNumber + ": cannot read \"" + line + "\"");
+                } else if (tile >= numTiles) {
+                    errors.accept("line " + lineNumber + ": tile " + tile + " is outside the " + numTiles + " tiles");
+                } else if (placement[tile] != Solver.UNASSIGNED) {
+                    errors.accept("line " + lineNumber + ": tile " + tile + " is placed twice");
+                } else {
+                    placement[tile] = type.ordinal();
                 }
             }
         }
-        return null;
+        return placement;
     }
 
-    // Solves the constraint satisfaction problem.
-    static Map<Integer, String> solveCSP(int[][] landscape, Map<String, Integer> tilesDict, Map<Integer, Integer> targets) {
-        int n = landscape.length;
-        int tileRows = n / TILE_SIZE;
-        int tileCols = n / TILE_SIZE;
-        int numTiles = tileRows * tileCols;
+    // Prints one "index TYPE" line per placed tile, or "No solution found".
+    static void printSolution(int[] solution) {
+        System.out.print(formatSolution(solution));
+    }
 
-        // Build the tile contribution dictionary.
-        Map<Integer, Map<String, Map<Integer, Integer>>> tileContrib = new HashMap<>();
-        for (int idx = 0; idx < numTiles; idx++) {
-            int r = idx / tileCols;
-            int c = idx % tileCols;
-            int[][] patch = getPatch(landscape, r, c);
-            Map<String, Map<Integer, Integer>> contribMap = new HashMap<>();
-            contribMap.put("FULL_BLOCK", computeContribution(patch, "FULL_BLOCK"));
-            contribMap.put("OUTER_BOUNDARY", computeContribution(patch, "OUTER_BOUNDARY"));
-            contribMap.put("EL_SHAPE", computeContribution(patch, "EL_SHAPE"));
-            tileContrib.put(idx, contribMap);
+    static String formatSolution(int[] solution) {
+        if (solution == null) {
+            return "No solution found" + System.lineSeparator();
         }
+        StringBuilder sb = new StringBuilder(solution.length * 20);
+        for (int v = 0; v < solution.length; v++) {
+            if (solution[v] == Solver.UNASSIGNED) continue;
+            sb.append(v).append(' ').append(TileType.VALUES[solution[v]].name()).append(System.lineSeparator());
+        }
+        return sb.toString();
+    }
 
-        // Initialize domains.
-        Map<Integer, List<String>> domains = new HashMap<>();
-        for (int v = 0; v < numTiles; v++) {
-            List<String> domainList = new ArrayList<>();
-            domainList.add("FULL_BLOCK");
-            domainList.add("OUTER_BOUNDARY");
-            domainList.add("EL_SHAPE");
-            domains.put(v, domainList);
+    // Reads a compiled problem file directly, or parses a text one and builds its tables.
+    static Problem loadProblem(Path path, boolean echo, boolean stats) throws IOException {
+        long start = System.nanoTime();
+        if (Problem.isCompiled(path)) {
+            Problem problem = Problem.load(path);
+            if (stats) {
+                System.err.printf("loaded %d compiled tiles in %.2f ms%n", problem.numTiles, (System.nanoTime() - start) / 1e6);
+            }
+            return problem;
         }
+        InputData inputData = parseInput(path);
+        if (stats) {
+            System.err.printf("parsed %dx%d landscape in %.2f ms%n",
+                    inputData.size, inputData.size, (System.nanoTime() - start) / 1e6);
+        }
+        if (echo) {
+            echoLandscape(inputData);
+        }
+        return Problem.build(inputData.size, inputData.landscape, inputData.tilesDict, inputData.targets);
+    }
 
-        // Copy remaining tiles from the input dictionary.
-        Map<String, Integer> remainingTiles = new HashMap<>(tilesDict);
+    // Parses "c1,c2,c3,c4" into per-color targets.
+    static int[] parseTargets(String text) {
+        String[] parts = text.split(",");
+        if (parts.length != Problem.COLORS) {
+            throw new IllegalArgumentException("Expected " + Problem.COLORS + " comma-separated targets: " + text);
+        }
+        int[] targets = new int[Problem.COLORS];
+        for (int c = 0; c < Problem.COLORS; c++) {
+            targets[c] = Integer.parseInt(parts[c].trim());
+        }
+        return targets;
+    }
 
-        return backtrack(new HashMap<>(), domains, tileContrib, remainingTiles, targets, numTiles);
+    private static void printUsage() {
+        System.err.println("Usage: java Main [--cache-mb N] [--stats] [--progress SECONDS] [--parallel | --threads N] [--deterministic] [--impact] [--lp K] [--echo]"
+                + " [--checkpoint FILE [--checkpoint-every SECONDS]] [--resume FILE]"
+                + " [--deadline SECONDS [--restarts luby|geometric] [--seed N]] [--repair previous-output]"
+                + " [--count | --enumerate N]"
+                + " [--compile out.bin] [--targets c1,c2,c3,c4] [problem-file]");
+        System.err.println("       java Main --batch dir|manifest [--out DIR] [--workers N] [--timeout SECONDS] [--cache-mb N]");
+        System.err.println("       java Main --serve PORT [--workers N] [--queue N] [--timeout SECONDS] [--cache-mb N]");
     }
 
     public static void main(String[] args) {
+        int cacheMb = NogoodCache.DEFAULT_MB;
+        boolean stats = false;
+        double progressSeconds = 0;
+        int threads = 1;
+        boolean deterministic = false;
+        boolean echo = false;
+        String file = "tilesproblem.txt";
+        String compileTo = null;
+        int[] targets = null;
+        String batch = null;
+        String outDir = "results";
+        int workers = Runtime.getRuntime().availableProcessors();
+        double timeoutSeconds = 0;
+        int servePort = -1;
+        int queue = SolverServer.DEFAULT_QUEUE;
+        double deadlineSeconds = 0;
+        AnytimeSolver.Schedule schedule = AnytimeSolver.Schedule.LUBY;
+        long seed = 1;
+        String repairFrom = null;
+        boolean count = false;
+        long enumerate = -1;
+        boolean impact = false;
+        int relaxationInterval = 0;
+        String checkpointFile = null;
+        String resumeFrom = null;
+        double checkpointSeconds = Checkpoint.DEFAULT_INTERVAL_NANOS / 1e9;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--cache-mb":
+                    cacheMb = Integer.parseInt(args[++i]);
+                    break;
+                case "--stats":
+                    stats = true;
+                    break;
+                case "--progress":
+                    progressSeconds = Double.parseDouble(args[++i]);
+                    break;
+                case "--parallel":
+                    threads = Runtime.getRuntime().availableProcessors();
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "--deterministic":
+                    deterministic = true;
+                    break;
+                case "--echo":
+                    echo = true;
+                    break;
+                case "--compile":
+                    compileTo = args[++i];
+                    break;
+                case "--targets":
+                    targets = parseTargets(args[++i]);
+                    break;
+                case "--batch":
+                    batch = args[++i];
+                    break;
+                case "--out":
+                    outDir = args[++i];
+                    break;
+                case "--workers":
+                    workers = Integer.parseInt(args[++i]);
+                    break;
+                case "--timeout":
+                    timeoutSeconds = Double.parseDouble(args[++i]);
+                    break;
+                case "--serve":
+                    servePort = Integer.parseInt(args[++i]);
+                    break;
+                case "--queue":
+                    queue = Integer.parseInt(args[++i]);
+                    break;
+                case "--deadline":
+                    deadlineSeconds = Double.parseDouble(args[++i]);
+                    break;
+                case "--restarts":
+                    schedule = AnytimeSolver.Schedule.valueOf(args[++i].toUpperCase(Locale.ROOT));
+                    break;
+                case "--seed":
+                    seed = Long.parseLong(args[++i]);
+                    break;
+                case "--repair":
+                    repairFrom = args[++i];
+                    break;
+                case "--count":
+                    count = true;
+                    break;
+                case "--enumerate":
+                    enumerate = Long.parseLong(args[++i]);
+                    break;
+                case "--impact":
+                    impact = true;
+                    break;
+                case "--lp":
+                    relaxationInterval = Integer.parseInt(args[++i]);
+                    break;
+                case "--checkpoint":
+                    checkpointFile = args[++i];
+                    break;
+                case "--checkpoint-every":
+                    checkpointSeconds = Double.parseDouble(args[++i]);
+                    break;
+                case "--resume":
+                    resumeFrom = args[++i];
+                    break;
+                default:
+                    if (args[i].startsWith("--")) {
+                        System.err.println("Unknown option: " + args[i]);
+                        printUsage();
+                        return;
+                    }
+                    file = args[i];
+            }
+        }
+        if ((checkpointFile != null || resumeFrom != null) && (threads > 1 || deadlineSeconds > 0 || repairFrom != null
+                || count || enumerate >= 0 || batch != null || servePort >= 0 || compileTo != null || impact)) {
+            // Only the sequential search can be checkpointed; anything else would ignore the file. Impact
+            // ordering learns from the whole search, including subtrees the unsaved nogood cache pruned,
+            // so a resumed run could not make the same choices.
+            System.err.println("--checkpoint and --resume only work with the sequential search, not with --impact,"
+                    + " --parallel, --threads, --deadline, --repair, --count, --enumerate, --batch, --serve or --compile");
+            printUsage();
+            return;
+        }
+        if (servePort >= 0) {
+            try {
+                SolverServer server = new SolverServer(workers, queue, SolverServer.DEFAULT_LANDSCAPES,
+                        (long) (timeoutSeconds * 1e9), (long) cacheMb << 20);
+                server.start(servePort);
+                System.err.println("listening on http://127.0.0.1:" + server.port() + "/solve");
+            } catch (IOException e) {
+                System.err.println("Error starting the server: " + e.getMessage());
+            }
+            return;
+        }
+        if (batch != null) {
+            try {
+                long start = System.nanoTime();
+                BatchSolver solver = new BatchSolver(Paths.get(outDir), workers, (long) (timeoutSeconds * 1e9), (long) cacheMb << 20);
+                List<BatchSolver.Result> results = solver.run(BatchSolver.inputs(Paths.get(batch)));
+                System.err.print(BatchSolver.summarize(results, System.nanoTime() - start));
+            } catch (IOException e) {
+                System.err.println("Error in batch: " + e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return;
+        }
         try {
-            String inputText = new String(Files.readAllBytes(Paths.get("tilesproblem.txt")), StandardCharsets.UTF_8);
-            InputData inputData = parseInput(inputText);
-            Map<Integer, String> solution = solveCSP(inputData.landscape, inputData.tilesDict, inputData.targets);
-            if (solution == null) {
-                System.out.println("No solution found");
+            Problem problem = loadProblem(Paths.get(file), echo, stats);
+            if (targets != null) {
+                problem = problem.withTargets(targets);
+            }
+            if (compileTo != null) {
+                problem.write(Paths.get(compileTo));
+                System.err.println("compiled " + problem.numTiles + " tiles to " + compileTo);
+                return;
+            }
+            SearchStats searchStats = null;
+            if (stats || progressSeconds > 0) {
+                searchStats = new SearchStats(problem.numTiles);
+                searchStats.progressIntervalNanos = (long) (progressSeconds * 1e9);
+            }
+            if (count) {
+                SolutionCounter counter = new SolutionCounter(problem);
+                System.out.println(counter.count());
+                if (stats) {
+                    System.err.println("peak states: " + counter.peakStates);
+                }
+                return;
+            }
+            if (enumerate >= 0) {
+                // A blank line separates consecutive solutions.
+                SolutionIterator.stream(problem)
+                        .limit(enumerate > 0 ? enumerate : Long.MAX_VALUE)
+                        .forEachOrdered(solution -> System.out.println(formatSolution(solution)));
+                return;
+            }
+            if (repairFrom != null) {
+                LocalRepair repair = new LocalRepair(problem, LocalRepair.DEFAULT_MAX_STEPS, (long) cacheMb << 20);
+                repair.stats = searchStats;
+                String source = repairFrom;
+                int[] previous = readPlacement(Paths.get(repairFrom), problem.numTiles,
+                        error -> System.err.println("skipped in " + source + ": " + error));
+                printSolution(repair.solve(previous));
+                if (stats) {
+                    System.err.println((repair.repaired ? "repaired in " : "repair failed after ") + repair.steps + " moves");
+                }
+                if (repair.repaired) {
+                    // The full search never ran, so there is nothing to report.
+                    searchStats = null;
+                }
+            } else if (deadlineSeconds > 0) {
+                AnytimeSolver anytime = new AnytimeSolver(problem, schedule, seed, (long) cacheMb << 20);
+                anytime.stats = searchStats;
+                anytime.impactOrdering = impact;
+                AnytimeSolver.Result result = anytime.solve(System.nanoTime() + (long) (deadlineSeconds * 1e9));
+                if (!result.exact) {
+                    System.out.println("Non-exact placement, L1 distance " + result.distance + " from the targets"
+                            + (result.complete ? " (no exact placement exists)" : ""));
+                }
+                printSolution(result.assignment);
+                if (stats) {
+                    System.err.println("restarts: " + result.restarts);
+                }
+            } else if (threads > 1) {
+                ParallelSearch search = new ParallelSearch(problem, threads, deterministic, (long) cacheMb << 20);
+                search.stats = searchStats;
+                search.relaxationInterval = relaxationInterval;
+                printSolution(search.solve());
             } else {
-                List<Integer> keys = new ArrayList<>(solution.keySet());
-                Collections.sort(keys);
-                for (int key : keys) {
-                    System.out.println(key + " " + solution.get(key));
+                Solver solver = new Solver(problem);
+                solver.nogoods = cacheMb > 0 ? new NogoodCache((long) cacheMb << 20) : null;
+                solver.stats = searchStats;
+                solver.impactOrdering = impact;
+                if (relaxationInterval > 0) {
+                    solver.relaxation = new LinearRelaxation(problem, relaxationInterval, LinearRelaxation.DEFAULT_ITERATIONS);
+                }
+                // A resumed search keeps checkpointing to the file it resumed from.
+                Path checkpointPath = checkpointFile != null ? Paths.get(checkpointFile)
+                        : resumeFrom != null ? Paths.get(resumeFrom) : null;
+                if (checkpointPath != null) {
+                    solver.checkpoints = new Checkpoint.Writer(checkpointPath, problem, Checkpoint.DEFAULT_BUDGET,
+                            (long) (checkpointSeconds * 1e9));
                 }
+                if (resumeFrom != null) {
+                    int[] solution;
+                    try {
+                        solution = solver.solveFrom(Checkpoint.read(Paths.get(resumeFrom)));
+                    } catch (IllegalArgumentException e) {
+                        System.err.println("Cannot resume from " + resumeFrom + ": " + e.getMessage());
+                        return;
+                    }
+                    printSolution(solution);
+                } else {
+                    printSolution(solver.solve());
+                }
+                if (checkpointPath != null) {
+                    // The search ran to the end, so there is nothing left to resume.
+                    Files.deleteIfExists(checkpointPath);
+                    if (solver.checkpoints.failure != null) {
+                        System.err.println("Error writing a checkpoint: " + solver.checkpoints.failure.getMessage());
+                    }
+                    if (stats) {
+                        System.err.printf(Locale.ROOT, "checkpoints: %d written in %.1f ms%n",
+                                solver.checkpoints.writes, solver.checkpoints.writeNanos / 1e6);
+                    }
+                }
+            }
+            if (stats && searchStats != null) {
+                System.err.println(searchStats.toJson());
             }
         } catch (IOException e) {
             System.err.println("Error reading the file: " + e.getMessage());
+            System.exit(1);
         }
     }
 }
@@ -0,0 +1,101 @@
+import java.util.Arrays;
+
+// Bounded table of search states that are already known to have no solution.
+// States are identified by two independent 64-bit hashes; the table is split into two-slot buckets
+// where the first slot keeps the entry that took the most nodes to refute and the second always
+// takes the newest one, so cheap refutations cannot push out expensive ones.
+final class NogoodCache {
+
+    static final int DEFAULT_MB = 16;
+    // key + check + cost
+    static final int BYTES_PER_ENTRY = 24;
+
+    private final long[] keys;
+    private final long[] checks;
+    // Nodes spent refuting the state; 0 marks an empty slot.
+    private final long[] costs;
+    private final int bucketMask;
+
+    long hits;
+    long misses;
+    long stores;
+    long evictions;
+
+    NogoodCache(long maxBytes) {
+        long entries = Math.max(2, maxBytes / BYTES_PER_ENTRY);
+        int buckets = Integer.highestOneBit((int) Math.min(entries / 2, 1 << 30));
+        this.keys = new long[buckets * 2];
+        this.checks = new long[buckets * 2];
+        this.costs = new long[buckets * 2];
+        this.bucketMask = buckets - 1;
+    }
+
+    // Empties the table and its counters.
+    void clear() {
+        Arrays.fill(costs, 0);
+        hits = 0;
+        misses = 0;
+        stores = 0;
+        evictions = 0;
+    }
+
+    int capacity() {
+        return keys.length;
+    }
+
+    boolean contains(long key, long check) {
+        int slot = bucket(key);
+        if (matches(slot, key, check) || matches(slot + 1, key, check)) {
+            hits++;
+            return true;
+        }
+        misses++;
+        return false;
+    }
+
+    void store(long key, long check, long cost) {
+        int slot = bucket(key);
+        stores++;
+        if (matches(slot, key, check) || matches(slot + 1, key, check)) {
+            return;
+        }
+        if (costs[slot] == 0) {
+            put(slot, key, check, cost);
+        } else if (cost >= costs[slot]) {
+            if (costs[slot + 1] != 0) {
+                evictions++;
+            }
+            keys[slot + 1] = keys[slot];
+            checks[slot + 1] = checks[slot];
+            costs[slot + 1] = costs[slot];
+            put(slot, key, check, cost);
+        } else {
+            if (costs[slot + 1] != 0) {
+                evictions++;
+            }
+            put(slot + 1, key, check, cost);
+        }
+    }
+
+    @Override
+    public String toString() {
+        long probes = hits + misses;
+        double hitRate = probes == 0 ? 0 : 100.0 * hits / probes;
+        return String.format("nogood cache: %d slots, %d hits, %d misses (%.1f%% hit rate), %d stores, %d evictions",
+                capacity(), hits, misses, hitRate, stores, evictions);
+    }
+
+    private int bucket(long key) {
+        return (int) (key & bucketMask) << 1;
+    }
+
+    private boolean matches(int slot, long key, long check) {
+        return costs[slot] != 0 && keys[slot] == key && checks[slot] == check;
+    }
+
+    private void put(int slot, long key, long check, long cost) {
+        keys[slot] = key;
+        checks[slot] = check;
+        costs[slot] = Math.max(1, cost);
+    }
+}
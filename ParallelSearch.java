@@ -0,0 +1,178 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Parallel version of Solver.solve. The top levels of the search tree are expanded into a frontier
+// of subtrees, listed in the order the sequential search would visit them, and each subtree becomes
+// a task on a work-stealing pool. Every worker thread keeps one Solver (and its nogood cache) and
+// replays a task's decisions on it before searching the subtree.
+//
+// Once a task finds a solution the remaining tasks are cancelled. In deterministic mode only tasks
+// later in the frontier are cancelled and the earliest solution is returned, which is the one the
+// sequential search would have found.
+final class ParallelSearch {
+
+    // Subtrees per thread to aim for when splitting, so that uneven subtrees balance out.
+    static final int TASKS_PER_THREAD = 16;
+
+    final Problem problem;
+    final int threads;
+    final boolean deterministic;
+    // Nogood cache size per worker, 0 for none.
+    final long cacheBytes;
+    // Nodes between linear-relaxation checks in every worker, 0 for none.
+    int relaxationInterval;
+    // When set, every worker keeps its own SearchStats and they are merged in here at the end.
+    SearchStats stats;
+    private final List<Solver> workers = new ArrayList<>();
+
+    ParallelSearch(Problem problem, int threads, boolean deterministic, long cacheBytes) {
+        this.problem = problem;
+        this.threads = threads;
+        this.deterministic = deterministic;
+        this.cacheBytes = cacheBytes;
+    }
+
+    // Returns the type ordinal per tile, or null if there is no solution.
+    int[] solve() {
+        if (stats != null) {
+            stats.start();
+        }
+        Solver splitter = new Solver(problem);
+        if (!splitter.propagate()) {
+            finish(splitter, false);
+            return null;
+        }
+        List<int[]> frontier = split(splitter, threads * TASKS_PER_THREAD);
+
+        AtomicInteger found = new AtomicInteger(Integer.MAX_VALUE);
+        int[][] results = new int[frontier.size()][];
+        ThreadLocal<Solver> solvers = ThreadLocal.withInitial(this::newSolver);
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            List<ForkJoinTask<?>> tasks = new ArrayList<>(frontier.size());
+            for (int i = 0; i < frontier.size(); i++) {
+                int index = i;
+                int[] path = frontier.get(i);
+                tasks.add(pool.submit(() -> {
+                    int[] solution = searchSubtree(solvers.get(), path, index, found);
+                    if (solution != null) {
+                        results[index] = solution;
+                        found.accumulateAndGet(index, Math::min);
+                    }
+                }));
+            }
+            for (ForkJoinTask<?> task : tasks) {
+                task.join();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        int best = found.get();
+        finish(splitter, best != Integer.MAX_VALUE);
+        return best == Integer.MAX_VALUE ? null : results[best];
+    }
+
+    private void finish(Solver splitter, boolean solved) {
+        if (stats == null) {
+            return;
+        }
+        stats.finish(splitter, solved);
+        synchronized (workers) {
+            for (Solver worker : workers) {
+                worker.stats.collect(worker);
+                stats.merge(worker.stats);
+            }
+        }
+    }
+
+    private Solver newSolver() {
+        Solver solver = new Solver(problem);
+        solver.nogoods = cacheBytes > 0 ? new NogoodCache(cacheBytes) : null;
+        if (relaxationInterval > 0) {
+            solver.relaxation = new LinearRelaxation(problem, relaxationInterval, LinearRelaxation.DEFAULT_ITERATIONS);
+        }
+        if (stats != null) {
+            solver.stats = new SearchStats(problem.numTiles);
+            solver.stats.timing = stats.timing;
+            solver.stats.progressIntervalNanos = stats.progressIntervalNanos;
+            solver.stats.progressOut = stats.progressOut;
+            solver.stats.start();
+            synchronized (workers) {
+                workers.add(solver);
+            }
+        }
+        return solver;
+    }
+
+    // Whether a task at the given frontier index is no longer needed.
+    private boolean cancelled(int index, AtomicInteger found) {
+        int best = found.get();
+        return deterministic ? best < index : best != Integer.MAX_VALUE;
+    }
+
+    private int[] searchSubtree(Solver solver, int[] path, int index, AtomicInteger found) {
+        if (cancelled(index, found)) {
+            return null;
+        }
+        solver.reset();
+        solver.stop = () -> cancelled(index, found);
+        try {
+            if (!solver.propagate()) {
+                return null;
+            }
+            for (int i = 0; i < path.length; i += 2) {
+                if (!solver.push(path[i], path[i + 1])) {
+                    return null;
+                }
+            }
+            return solver.backtrack() ? solver.assignment.clone() : null;
+        } finally {
+            solver.stop = null;
+        }
+    }
+
+    // Expands the search tree level by level until it has at least the requested number of open
+    // subtrees. Each subtree is the list of (tile, type) decisions leading to it, and the list keeps
+    // the sequential search order.
+    static List<int[]> split(Solver solver, int wanted) {
+        List<int[]> frontier = new ArrayList<>();
+        frontier.add(new int[0]);
+        while (frontier.size() < wanted) {
+            List<int[]> next = new ArrayList<>();
+            boolean expanded = false;
+            for (int[] path : frontier) {
+                if (path.length / 2 == solver.numTiles) {
+                    next.add(path);
+                    continue;
+                }
+                for (int i = 0; i < path.length; i += 2) {
+                    solver.push(path[i], path[i + 1]);
+                }
+                int var = solver.selectVariable();
+                for (int k = 0; k < Problem.TYPES; k++) {
+                    int val = solver.valueOrder[var * Problem.TYPES + k];
+                    if (solver.push(var, val)) {
+                        int[] child = Arrays.copyOf(path, path.length + 2);
+                        child[path.length] = var;
+                        child[path.length + 1] = val;
+                        next.add(child);
+                        solver.pop();
+                    }
+                }
+                while (solver.depth > 0) {
+                    solver.pop();
+                }
+                expanded = true;
+            }
+            frontier = next;
+            if (!expanded || frontier.isEmpty()) {
+                break;
+            }
+        }
+        return frontier;
+    }
+}
@@ -0,0 +1,296 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+// Flat, precomputed form of a tile placement instance.
+// Everything the search needs is stored in primitive arrays indexed by tile, type ordinal and color,
+// so the solver never touches a Map or compares strings while it runs.
+final class Problem {
+
+    static final int COLORS = 4;
+    static final int TYPES = TileType.VALUES.length;
+    // Compiled problem files start with "TILE" followed by the format version.
+    static final int MAGIC = 0x54494C45;
+    static final int FORMAT_VERSION = 1;
+    // Cells per tile; one color's cells of a tile fit in CELLS bits and all colors in one long.
+    static final int CELLS = Main.TILE_SIZE * Main.TILE_SIZE;
+    // Below this many tiles the precompute runs on the calling thread.
+    static final int PARALLEL_TILES = 4096;
+    private static final int HEADER_BYTES = 6 * Integer.BYTES + (TYPES + COLORS) * Integer.BYTES;
+
+    final int tileRows;
+    final int tileCols;
+    final int numTiles;
+    // Visible bushes per (tile, type, color): contrib[(tile * TYPES + type) * COLORS + (color - 1)].
+    // Every entry is at most TILE_SIZE^2, so one byte each keeps the table compact.
+    final byte[] contrib;
+    // Available tiles per type ordinal.
+    final int[] inventory;
+    // Target visible bushes per color, indexed by color - 1.
+    final int[] targets;
+    // Tiles with identical contributions for every type and color are interchangeable. Each such
+    // class is chained in index order; -1 marks the ends of a chain.
+    final int[] prevInClass;
+    final int[] nextInClass;
+
+    Problem(int tileRows, int tileCols, byte[] contrib, int[] inventory, int[] targets) {
+        this(tileRows, tileCols, contrib, inventory, targets,
+                new int[tileRows * tileCols], new int[tileRows * tileCols]);
+        Map<Long, Integer> lastInClass = new HashMap<>();
+        for (int v = 0; v < numTiles; v++) {
+            Integer prev = lastInClass.put(classKey(v), v);
+            prevInClass[v] = prev == null ? -1 : prev;
+            nextInClass[v] = -1;
+            if (prev != null) {
+                nextInClass[prev] = v;
+            }
+        }
+    }
+
+    private Problem(int tileRows, int tileCols, byte[] contrib, int[] inventory, int[] targets,
+                    int[] prevInClass, int[] nextInClass) {
+        this.tileRows = tileRows;
+        this.tileCols = tileCols;
+        this.numTiles = tileRows * tileCols;
+        this.contrib = contrib;
+        this.inventory = inventory;
+        this.targets = targets;
+        this.prevInClass = prevInClass;
+        this.nextInClass = nextInClass;
+    }
+
+    // Same landscape tables with different color targets; nothing is recomputed.
+    Problem withTargets(int[] newTargets) {
+        return new Problem(tileRows, tileCols, contrib, inventory, newTargets, prevInClass, nextInClass);
+    }
+
+    // Same landscape tables with a different tile inventory.
+    Problem withInventory(int[] newInventory) {
+        return new Problem(tileRows, tileCols, contrib, newInventory, targets, prevInClass, nextInClass);
+    }
+
+    int numClasses() {
+        int classes = 0;
+        for (int v = 0; v < numTiles; v++) {
+            if (prevInClass[v] < 0) {
+                classes++;
+            }
+        }
+        return classes;
+    }
+
+    // Packs a tile's contribution vector into one long; each entry is at most TILE_SIZE^2 and fits in 5 bits.
+    private long classKey(int tile) {
+        long key = 0;
+        int base = tile * TYPES * COLORS;
+        for (int i = 0; i < TYPES * COLORS; i++) {
+            key = (key << 5) | contrib[base + i];
+        }
+        return key;
+    }
+
+    // Packs each tile's bushes into one long: bits [c * CELLS, (c + 1) * CELLS) mark the cells
+    // (row-major within the tile) holding color c + 1.
+    static long[] tileMasks(int size, byte[] landscape) {
+        int tileCols = size / Main.TILE_SIZE;
+        long[] masks = new long[tileCols * tileCols];
+        tiles(masks.length).forEach(idx -> {
+            int startRow = (idx / tileCols) * Main.TILE_SIZE;
+            int startCol = (idx % tileCols) * Main.TILE_SIZE;
+            long mask = 0;
+            for (int i = 0; i < Main.TILE_SIZE; i++) {
+                int offset = (startRow + i) * size + startCol;
+                for (int j = 0; j < Main.TILE_SIZE; j++) {
+                    int color = landscape[offset + j];
+                    if (color >= 1 && color <= COLORS) {
+                        mask |= 1L << ((color - 1) * CELLS + i * Main.TILE_SIZE + j);
+                    }
+                }
+            }
+            masks[idx] = mask;
+        });
+        return masks;
+    }
+
+    // Tile indices, split across the common pool once there are enough tiles to be worth it.
+    private static IntStream tiles(int numTiles) {
+        IntStream range = IntStream.range(0, numTiles);
+        return numTiles >= PARALLEL_TILES ? range.parallel() : range;
+    }
+
+    // Builds the contribution tables for every tile of a size x size row-major landscape.
+    static Problem build(int size, byte[] landscape, Map<String, Integer> tilesDict, Map<Integer, Integer> targets) {
+        int tileRows = size / Main.TILE_SIZE;
+        int tileCols = size / Main.TILE_SIZE;
+        int numTiles = tileRows * tileCols;
+
+        long[] masks = tileMasks(size, landscape);
+        byte[] contrib = new byte[numTiles * TYPES * COLORS];
+        tiles(numTiles).forEach(idx -> {
+            long mask = masks[idx];
+            for (TileType type : TileType.VALUES) {
+                int base = (idx * TYPES + type.ordinal()) * COLORS;
+                for (int c = 0; c < COLORS; c++) {
+                    contrib[base + c] = (byte) Long.bitCount((mask >>> (c * CELLS)) & type.visibleMask);
+                }
+            }
+        });
+
+        return new Problem(tileRows, tileCols, contrib, inventoryOf(tilesDict), targetsOf(targets));
+    }
+
+    // Tile counts by type ordinal; unknown names are ignored.
+    static int[] inventoryOf(Map<String, Integer> tilesDict) {
+        int[] inventory = new int[TYPES];
+        for (Map.Entry<String, Integer> entry : tilesDict.entrySet()) {
+            TileType type = TileType.fromName(entry.getKey());
+            if (type != null) {
+                inventory[type.ordinal()] = entry.getValue();
+            }
+        }
+        return inventory;
+    }
+
+    // Targets by 0-based color; missing colors are 0.
+    static int[] targetsOf(Map<Integer, Integer> targets) {
+        int[] targetArray = new int[COLORS];
+        for (int c = 1; c <= COLORS; c++) {
+            targetArray[c - 1] = targets.getOrDefault(c, 0);
+        }
+        return targetArray;
+    }
+
+    // 64-bit hash of a landscape, used to recognize one that was already built.
+    static long landscapeHash(int size, byte[] landscape) {
+        long hash = Solver.mix(size);
+        int i = 0;
+        for (; i + Long.BYTES <= landscape.length; i += Long.BYTES) {
+            long word = 0;
+            for (int k = 0; k < Long.BYTES; k++) {
+                word = word << 8 | (landscape[i + k] & 0xFF);
+            }
+            hash = Solver.mix(hash ^ word);
+        }
+        for (; i < landscape.length; i++) {
+            hash = Solver.mix(hash ^ landscape[i]);
+        }
+        return hash;
+    }
+
+    // Visible bushes of the given color when the tile is covered with the given type.
+    int contribution(int tile, int type, int color) {
+        return contrib[(tile * TYPES + type) * COLORS + color - 1];
+    }
+
+    // Writes the compiled form: a header (magic, version, tile rows and columns, type and color
+    // counts, inventory, targets) followed by the raw contribution table and the class chains.
+    // All values are big-endian, and the tables are stored exactly as they sit in memory, so
+    // loading is a bulk copy.
+    void write(Path path) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(HEADER_BYTES + contrib.length + 2 * numTiles * Integer.BYTES);
+        buf.putInt(MAGIC).putInt(FORMAT_VERSION);
+        buf.putInt(tileRows).putInt(tileCols).putInt(TYPES).putInt(COLORS);
+        for (int count : inventory) {
+            buf.putInt(count);
+        }
+        for (int target : targets) {
+            buf.putInt(target);
+        }
+        buf.put(contrib);
+        buf.asIntBuffer().put(prevInClass).put(nextInClass);
+        buf.clear();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buf.hasRemaining()) {
+                channel.write(buf);
+            }
+        }
+    }
+
+    // Whether the file starts with the compiled-format magic number.
+    static boolean isCompiled(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer head = ByteBuffer.allocate(Integer.BYTES);
+            return channel.read(head) == Integer.BYTES && head.getInt(0) == MAGIC;
+        }
+    }
+
+    // Loads a file written by write() through a memory-mapped view, without any text parsing.
+    static Problem load(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            ByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+            if (fileSize < HEADER_BYTES || buf.getInt() != MAGIC) {
+                throw new IOException("Not a compiled problem file: " + path);
+            }
+            int version = buf.getInt();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Unsupported compiled format version " + version + ": " + path);
+            }
+            int tileRows = buf.getInt();
+            int tileCols = buf.getInt();
+            if (buf.getInt() != TYPES || buf.getInt() != COLORS) {
+                throw new IOException("Compiled file has a different tile type or color layout: " + path);
+            }
+            // Checked before anything is allocated, so a truncated or corrupt file fails here.
+            long tiles = (long) tileRows * tileCols;
+            if (tileRows <= 0 || tileCols <= 0) {
+                throw new IOException("Compiled file has no tiles: " + path);
+            }
+            if (tiles > Integer.MAX_VALUE / (TYPES * COLORS)
+                    || fileSize != HEADER_BYTES + tiles * (TYPES * COLORS + 2 * Integer.BYTES)) {
+                throw new IOException("Compiled file is truncated or has a corrupt header: " + path);
+            }
+            int numTiles = (int) tiles;
+            int[] inventory = new int[TYPES];
+            int[] targets = new int[COLORS];
+            for (int t = 0; t < TYPES; t++) {
+                inventory[t] = buf.getInt();
+            }
+            for (int c = 0; c < COLORS; c++) {
+                targets[c] = buf.getInt();
+            }
+            byte[] contrib = new byte[numTiles * TYPES * COLORS];
+            buf.get(contrib);
+            int[] prevInClass = new int[numTiles];
+            int[] nextInClass = new int[numTiles];
+            buf.asIntBuffer().get(prevInClass).get(nextInClass);
+            for (byte b : contrib) {
+                if (b < 0 || b > CELLS) {
+                    throw new IOException("Compiled file has a contribution outside 0.." + CELLS
+                            + ": " + path);
+                }
+            }
+            for (int v = 0; v < numTiles; v++) {
+                if (!chainedConsistently(v, contrib, prevInClass, nextInClass)) {
+                    throw new IOException("Compiled file has a corrupt class chain at tile " + v
+                            + ": " + path);
+                }
+            }
+            return new Problem(tileRows, tileCols, contrib, inventory, targets, prevInClass, nextInClass);
+        }
+    }
+
+    // The symmetry breaking in Solver relies on chains that run in index order, link back to each
+    // other and only join tiles with the same contributions.
+    private static boolean chainedConsistently(int v, byte[] contrib, int[] prevInClass,
+                                               int[] nextInClass) {
+        int prev = prevInClass[v];
+        int next = nextInClass[v];
+        if (prev < -1 || prev >= v || next < -1 || next >= prevInClass.length || (next >= 0 && next <= v)) {
+            return false;
+        }
+        int width = TYPES * COLORS;
+        if (prev >= 0 && (nextInClass[prev] != v
+                || !Arrays.equals(contrib, prev * width, prev * width + width, contrib, v * width, v * width + width))) {
+            return false;
+        }
+        return next < 0 || prevInClass[next] == v;
+    }
+}
@@ -0,0 +1,233 @@
+import java.io.PrintStream;
+import java.util.Locale;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+// Counters, timers and progress reporting for one search. A Solver only touches this when its
+// stats field is set, so a run without instrumentation pays a null check per hook.
+// The same numbers are published as JFR events (tiles.Solve once per run, tiles.Progress at every
+// progress tick), which cost nothing unless a recording has them enabled.
+final class SearchStats {
+
+    // Nodes between two looks at the clock for progress reporting.
+    static final int CLOCK_INTERVAL = 4096;
+    // Progress tick used for JFR events when no progress lines were asked for.
+    static final long DEFAULT_TICK_NANOS = 1_000_000_000L;
+
+    @Name("tiles.Solve")
+    @Label("Tile Solve")
+    @Category("Tile Solver")
+    static class SolveEvent extends Event {
+        @Label("Tiles")
+        int tiles;
+        @Label("Solved")
+        boolean solved;
+        @Label("Nodes")
+        long nodes;
+        @Label("Failures")
+        long failures;
+        @Label("Backtracks")
+        long backtracks;
+        @Label("Max Depth")
+        int maxDepth;
+    }
+
+    @Name("tiles.Progress")
+    @Label("Tile Search Progress")
+    @Category("Tile Solver")
+    static class ProgressEvent extends Event {
+        @Label("Nodes")
+        long nodes;
+        @Label("Nodes Per Second")
+        double nodesPerSecond;
+        @Label("Depth")
+        int depth;
+        @Label("Max Depth")
+        int maxDepth;
+    }
+
+    final int numTiles;
+    // Also time selectVariable and propagation; costs two clock reads per call.
+    boolean timing = true;
+    // Interval between progress lines, 0 for none.
+    long progressIntervalNanos;
+    PrintStream progressOut = System.err;
+
+    long nodes;
+    // Assignments rejected by propagation (what ac3 used to reject).
+    long failures;
+    // Choice points exhausted without a solution, in total and per depth.
+    long backtracks;
+    final long[] backtracksByDepth;
+    int maxDepth;
+    long propagateNanos;
+    long selectNanos;
+    // Value ordering is computed once per tile when the Solver is built.
+    long orderValuesNanos;
+    long cacheHits;
+    long cacheMisses;
+    long cacheStores;
+    long cacheEvictions;
+    // Runs of the linear-relaxation stage and the nodes it refuted.
+    long relaxationRuns;
+    long relaxationCuts;
+    boolean solved;
+    long startNanos;
+    long elapsedNanos;
+
+    private SolveEvent event;
+    private int clockCountdown = CLOCK_INTERVAL;
+    private long nextProgress;
+    private long lastProgressNodes;
+    private long lastProgressTime;
+
+    SearchStats(int numTiles) {
+        this.numTiles = numTiles;
+        this.backtracksByDepth = new long[numTiles + 1];
+    }
+
+    void start() {
+        startNanos = System.nanoTime();
+        lastProgressTime = startNanos;
+        nextProgress = startNanos + tickNanos();
+        event = new SolveEvent();
+        event.begin();
+    }
+
+    // Called each time the search opens a choice point.
+    void onNode(Solver solver) {
+        if (solver.depth > maxDepth) {
+            maxDepth = solver.depth;
+        }
+        if (--clockCountdown > 0) {
+            return;
+        }
+        clockCountdown = CLOCK_INTERVAL;
+        long now = System.nanoTime();
+        if (now < nextProgress) {
+            return;
+        }
+        nextProgress = now + tickNanos();
+        double rate = (solver.nodes - lastProgressNodes) * 1e9 / Math.max(1, now - lastProgressTime);
+        lastProgressNodes = solver.nodes;
+        lastProgressTime = now;
+        ProgressEvent progress = new ProgressEvent();
+        if (progress.shouldCommit()) {
+            progress.nodes = solver.nodes;
+            progress.nodesPerSecond = rate;
+            progress.depth = solver.depth;
+            progress.maxDepth = maxDepth;
+            progress.commit();
+        }
+        if (progressIntervalNanos > 0) {
+            progressOut.printf(Locale.ROOT, "[progress] %.1fs nodes=%d (%.0f/s) depth=%d best=%d/%d%n",
+                    (now - startNanos) / 1e9, solver.nodes, rate, solver.depth, maxDepth, numTiles);
+        }
+    }
+
+    private long tickNanos() {
+        return progressIntervalNanos > 0 ? progressIntervalNanos : DEFAULT_TICK_NANOS;
+    }
+
+    void onBacktrack(int depth) {
+        backtracks++;
+        backtracksByDepth[depth]++;
+    }
+
+    // Captures the solver's own counters at the end of a run and commits the JFR event.
+    void finish(Solver solver, boolean solved) {
+        elapsedNanos = System.nanoTime() - startNanos;
+        this.solved = solved;
+        collect(solver);
+        if (event != null && event.shouldCommit()) {
+            event.tiles = numTiles;
+            event.solved = solved;
+            event.nodes = nodes;
+            event.failures = failures;
+            event.backtracks = backtracks;
+            event.maxDepth = maxDepth;
+            event.commit();
+        }
+    }
+
+    // Copies the counters the solver keeps itself.
+    void collect(Solver solver) {
+        nodes = solver.nodes;
+        orderValuesNanos = solver.orderValuesNanos;
+        if (solver.nogoods != null) {
+            cacheHits = solver.nogoods.hits;
+            cacheMisses = solver.nogoods.misses;
+            cacheStores = solver.nogoods.stores;
+            cacheEvictions = solver.nogoods.evictions;
+        }
+        if (solver.relaxation != null) {
+            relaxationRuns = solver.relaxation.runs;
+            relaxationCuts = solver.relaxation.cuts;
+        }
+    }
+
+    // Adds another worker's counters (parallel search); times are summed across workers.
+    void merge(SearchStats other) {
+        nodes += other.nodes;
+        failures += other.failures;
+        backtracks += other.backtracks;
+        for (int d = 0; d < backtracksByDepth.length; d++) {
+            backtracksByDepth[d] += other.backtracksByDepth[d];
+        }
+        maxDepth = Math.max(maxDepth, other.maxDepth);
+        propagateNanos += other.propagateNanos;
+        selectNanos += other.selectNanos;
+        orderValuesNanos += other.orderValuesNanos;
+        cacheHits += other.cacheHits;
+        cacheMisses += other.cacheMisses;
+        cacheStores += other.cacheStores;
+        cacheEvictions += other.cacheEvictions;
+        relaxationRuns += other.relaxationRuns;
+        relaxationCuts += other.relaxationCuts;
+    }
+
+    // End-of-run summary as a single JSON object.
+    String toJson() {
+        StringBuilder sb = new StringBuilder(256);
+        sb.append('{');
+        sb.append("\"tiles\":").append(numTiles);
+        sb.append(",\"solved\":").append(solved);
+        sb.append(String.format(Locale.ROOT, ",\"elapsedMs\":%.3f", elapsedNanos / 1e6));
+        sb.append(",\"nodes\":").append(nodes);
+        sb.append(String.format(Locale.ROOT, ",\"nodesPerSecond\":%.1f", nodes * 1e9 / Math.max(1, elapsedNanos)));
+        sb.append(",\"failures\":").append(failures);
+        sb.append(",\"backtracks\":").append(backtracks);
+        sb.append(",\"maxDepth\":").append(maxDepth);
+        sb.append(",\"timeMs\":{");
+        sb.append(String.format(Locale.ROOT, "\"propagate\":%.3f,\"selectVariable\":%.3f,\"orderValues\":%.3f",
+                propagateNanos / 1e6, selectNanos / 1e6, orderValuesNanos / 1e6));
+        sb.append('}');
+        sb.append(",\"nogoodCache\":{");
+        sb.append("\"hits\":").append(cacheHits);
+        sb.append(",\"misses\":").append(cacheMisses);
+        sb.append(",\"stores\":").append(cacheStores);
+        sb.append(",\"evictions\":").append(cacheEvictions);
+        sb.append('}');
+        sb.append(",\"relaxation\":{");
+        sb.append("\"runs\":").append(relaxationRuns);
+        sb.append(",\"cuts\":").append(relaxationCuts);
+        sb.append('}');
+        // Per-depth backtracks, trimmed after the deepest depth that has any.
+        int last = backtracksByDepth.length - 1;
+        while (last >= 0 && backtracksByDepth[last] == 0) {
+            last--;
+        }
+        sb.append(",\"backtracksByDepth\":[");
+        for (int d = 0; d <= last; d++) {
+            if (d > 0) {
+                sb.append(',');
+            }
+            sb.append(backtracksByDepth[d]);
+        }
+        sb.append("]}");
+        return sb.toString();
+    }
+}
@@ -0,0 +1,186 @@
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Counts the solutions of a problem without visiting them one by one. Tiles with identical
+// contributions (the classes in Problem) are interchangeable, so a class of m tiles only matters
+// through how many tiles of each type it takes, and a split (k0, k1, k2) stands for
+// m! / (k0! k1! k2!) placements. The count is a dynamic program over the classes whose state is
+// (per-color sums, remaining inventory): states reached in different ways are merged with their
+// counts added, which is the memoization, and states from which the classes still to come can no
+// longer reach the targets are dropped.
+//
+// The result counts every placement, as SolutionIterator lists them (no symmetry breaking).
+final class SolutionCounter {
+
+    final Problem problem;
+    // Largest number of distinct states in one layer of the last count.
+    int peakStates;
+
+    SolutionCounter(Problem problem) {
+        this.problem = problem;
+    }
+
+    BigInteger count() {
+        int numTiles = problem.numTiles;
+        List<Integer> heads = new ArrayList<>();
+        List<Integer> sizes = new ArrayList<>();
+        int largest = 0;
+        for (int v = 0; v < numTiles; v++) {
+            if (problem.prevInClass[v] >= 0) continue;
+            int size = 0;
+            for (int u = v; u >= 0; u = problem.nextInClass[u]) {
+                size++;
+            }
+            heads.add(v);
+            sizes.add(size);
+            largest = Math.max(largest, size);
+        }
+        int classes = heads.size();
+
+        // Reachable color range and tile count of classes k.. for pruning.
+        int[] restMin = new int[(classes + 1) * Problem.COLORS];
+        int[] restMax = new int[(classes + 1) * Problem.COLORS];
+        int[] restTiles = new int[classes + 1];
+        for (int k = classes - 1; k >= 0; k--) {
+            int head = heads.get(k);
+            int size = sizes.get(k);
+            restTiles[k] = restTiles[k + 1] + size;
+            for (int c = 0; c < Problem.COLORS; c++) {
+                int lo = Integer.MAX_VALUE;
+                int hi = 0;
+                for (int t = 0; t < Problem.TYPES; t++) {
+                    int cnt = problem.contribution(head, t, c + 1);
+                    lo = Math.min(lo, cnt);
+                    hi = Math.max(hi, cnt);
+                }
+                restMin[k * Problem.COLORS + c] = restMin[(k + 1) * Problem.COLORS + c] + size * lo;
+                restMax[k * Problem.COLORS + c] = restMax[(k + 1) * Problem.COLORS + c] + size * hi;
+            }
+        }
+
+        BigInteger[] factorials = new BigInteger[largest + 1];
+        factorials[0] = BigInteger.ONE;
+        for (int i = 1; i <= largest; i++) {
+            factorials[i] = factorials[i - 1].multiply(BigInteger.valueOf(i));
+        }
+
+        // A state is packed into a long in mixed radix: sums never exceed their targets and
+        // remaining counts never exceed the inventory.
+        int width = Problem.COLORS + Problem.TYPES;
+        int[] limits = new int[width];
+        long[] radix = new long[width];
+        long span = 1;
+        for (int i = 0; i < width; i++) {
+            limits[i] = i < Problem.COLORS ? problem.targets[i] : problem.inventory[i - Problem.COLORS];
+            radix[i] = span;
+            try {
+                span = Math.multiplyExact(span, limits[i] + 1L);
+            } catch (ArithmeticException e) {
+                throw new IllegalArgumentException("Too many distinct states to count this problem", e);
+            }
+        }
+
+        int[] values = new int[width];
+        System.arraycopy(problem.inventory, 0, values, Problem.COLORS, Problem.TYPES);
+        Map<Long, BigInteger> layer = new HashMap<>();
+        if (fits(values, restMin, restMax, restTiles, 0)) {
+            layer.put(pack(values, radix), BigInteger.ONE);
+        }
+        peakStates = layer.size();
+        for (int k = 0; k < classes && !layer.isEmpty(); k++) {
+            int head = heads.get(k);
+            int size = sizes.get(k);
+            List<int[]> splits = new ArrayList<>();
+            splits(size, 0, new int[Problem.TYPES], splits);
+            // Per split: its number of placements and the change it makes to a state.
+            BigInteger[] ways = new BigInteger[splits.size()];
+            int[][] deltas = new int[splits.size()][width];
+            long[] packedDeltas = new long[splits.size()];
+            for (int s = 0; s < ways.length; s++) {
+                int[] split = splits.get(s);
+                BigInteger w = factorials[size];
+                for (int t = 0; t < Problem.TYPES; t++) {
+                    w = w.divide(factorials[split[t]]);
+                    deltas[s][Problem.COLORS + t] = -split[t];
+                    for (int c = 0; c < Problem.COLORS; c++) {
+                        deltas[s][c] += split[t] * problem.contribution(head, t, c + 1);
+                    }
+                }
+                ways[s] = w;
+                for (int i = 0; i < width; i++) {
+                    packedDeltas[s] += deltas[s][i] * radix[i];
+                }
+            }
+
+            Map<Long, BigInteger> next = new HashMap<>(layer.size() * 2);
+            int[] moved = new int[width];
+            for (Map.Entry<Long, BigInteger> entry : layer.entrySet()) {
+                long key = entry.getKey();
+                unpack(key, radix, limits, values);
+                for (int s = 0; s < ways.length; s++) {
+                    boolean inRange = true;
+                    for (int i = 0; i < width && inRange; i++) {
+                        moved[i] = values[i] + deltas[s][i];
+                        inRange = moved[i] >= 0 && moved[i] <= limits[i];
+                    }
+                    if (!inRange || !fits(moved, restMin, restMax, restTiles, k + 1)) continue;
+                    BigInteger count = ways[s].equals(BigInteger.ONE) ? entry.getValue() : entry.getValue().multiply(ways[s]);
+                    next.merge(key + packedDeltas[s], count, BigInteger::add);
+                }
+            }
+            layer = next;
+            peakStates = Math.max(peakStates, layer.size());
+        }
+        // With no classes left the range check only lets exact sums through.
+        BigInteger total = BigInteger.ZERO;
+        for (BigInteger count : layer.values()) {
+            total = total.add(count);
+        }
+        return total;
+    }
+
+    private static long pack(int[] values, long[] radix) {
+        long key = 0;
+        for (int i = 0; i < values.length; i++) {
+            key += values[i] * radix[i];
+        }
+        return key;
+    }
+
+    private static void unpack(long key, long[] radix, int[] limits, int[] values) {
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (int) (key / radix[i] % (limits[i] + 1));
+        }
+    }
+
+    // Whether the targets are still reachable from a state with classes k.. left to place.
+    private boolean fits(int[] values, int[] restMin, int[] restMax, int[] restTiles, int k) {
+        for (int c = 0; c < Problem.COLORS; c++) {
+            int target = problem.targets[c];
+            if (values[c] + restMin[k * Problem.COLORS + c] > target || values[c] + restMax[k * Problem.COLORS + c] < target) {
+                return false;
+            }
+        }
+        int stock = 0;
+        for (int t = 0; t < Problem.TYPES; t++) {
+            stock += values[Problem.COLORS + t];
+        }
+        return stock >= restTiles[k];
+    }
+
+    // Every way to split m tiles over the types from index t on.
+    private static void splits(int m, int t, int[] split, List<int[]> out) {
+        if (t == Problem.TYPES - 1) {
+            split[t] = m;
+            out.add(split.clone());
+            return;
+        }
+        for (int k = 0; k <= m; k++) {
+            split[t] = k;
+            splits(m - k, t + 1, split, out);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+// Lazily walks through every solution of a problem. The search only runs when the next solution is
+// asked for and pauses on it, so a consumer that stops pulling stops the search, and memory stays
+// at one Solver however many solutions there are.
+//
+// Symmetry breaking is off, so placements that differ only by permuting interchangeable tiles are
+// all listed, and so is the nogood cache, since an exhausted choice point may have had solutions.
+final class SolutionIterator implements Iterator<int[]> {
+
+    private final Solver solver;
+    private boolean started;
+    private boolean ready;
+    private boolean done;
+
+    SolutionIterator(Problem problem) {
+        this.solver = new Solver(problem, false);
+    }
+
+    // Solutions as a sequential, ordered stream; take what is needed with limit or a short-circuiting
+    // terminal operation.
+    static Stream<int[]> stream(Problem problem) {
+        Spliterator<int[]> spliterator = Spliterators.spliteratorUnknownSize(new SolutionIterator(problem),
+                Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.DISTINCT);
+        return StreamSupport.stream(spliterator, false);
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (!ready && !done) {
+            ready = started ? solver.resume() : solver.propagate() && solver.backtrack();
+            started = true;
+            done = !ready;
+        }
+        return ready;
+    }
+
+    // Returns a copy of the next solution, as type ordinals per tile.
+    @Override
+    public int[] next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        ready = false;
+        return solver.assignment.clone();
+    }
+
+    // Assignments tried so far.
+    long nodes() {
+        return solver.nodes;
+    }
+}
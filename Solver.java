@@ -0,0 +1,825 @@
+import java.util.SplittableRandom;
+import java.util.function.BooleanSupplier;
+
+// Backtracking search over a Problem using only primitive state.
+// Assignments are made in place and undone through a trail, so a node of the search allocates nothing.
+final class Solver {
+
+    static final int UNASSIGNED = -1;
+    // One histogram bucket per possible contribution difference within a tile.
+    static final int BUCKETS = Main.TILE_SIZE * Main.TILE_SIZE + 1;
+    // Nodes between two polls of the stop condition.
+    static final int STOP_INTERVAL = 1024;
+    static final int IMPACT_CAP = 1 << 20;
+    private static final long SALT_A = 0x2545F4914F6CDD1DL;
+    private static final long SALT_B = 0x632BE59BD9B4E019L;
+
+    final Problem problem;
+    final int numTiles;
+    // When set, interchangeable tiles (see Problem.prevInClass) are assigned in chain order with
+    // non-decreasing type ordinals, so each class is searched by how many tiles of each type it
+    // gets rather than by every permutation of those types.
+    final boolean breakSymmetry;
+
+    // Type ordinal per tile, or UNASSIGNED.
+    final int[] assignment;
+    // Bitmask of type ordinals each tile may still take.
+    final int[] domain;
+    // Tiles left per type ordinal.
+    final int[] remaining;
+    // Visible bushes per color contributed by the assigned tiles.
+    final int[] current = new int[Problem.COLORS];
+    // Smallest and largest contribution per (tile, color) over the tile's domain.
+    final int[] tileMin;
+    final int[] tileMax;
+    // Sums of tileMin and tileMax per color over the unassigned tiles, kept up to date on every
+    // assign and undo so the bounds check costs O(colors) instead of O(numTiles).
+    final int[] restMin = new int[Problem.COLORS];
+    final int[] restMax = new int[Problem.COLORS];
+    // Tiles in the order they were assigned; trail[0..depth) is the current path.
+    final int[] trail;
+    int depth;
+    // changes[] top before the assignment at each depth, for pop().
+    final int[] marks;
+    // Choice points per depth: the tile being branched on, the next index into its valueOrder,
+    // and the node count when it was opened (the cost recorded if it turns into a nogood).
+    final int[] branchVar;
+    final byte[] cursor;
+    final long[] startNodes;
+    // Depth the current backtrack call started from.
+    private int searchBase;
+    // Domain changes made by propagation as (tile, previous mask) pairs, undone on backtrack.
+    final int[] changes;
+    int changeTop;
+    // Unassigned tiles are free[0..freeCount); position[v] is the index of v in free.
+    final int[] free;
+    final int[] position;
+    int freeCount;
+    // Inventory bookkeeping over the unassigned tiles, per type: how many could still take it and
+    // how many can take nothing else.
+    final int[] canTake = new int[Problem.TYPES];
+    final int[] forced = new int[Problem.TYPES];
+    // Per (color, type) slot = color * TYPES + type, the reachable color range when type t is
+    // treated as unavailable, plus histograms of how much each tile could lower (savings) or raise
+    // (gains) that color by taking t instead. With k tiles of type t left, only the best k of those
+    // moves can be used, which is what the cardinality check measures.
+    final int[] capMin = new int[Problem.COLORS * Problem.TYPES];
+    final int[] capMax = new int[Problem.COLORS * Problem.TYPES];
+    final int[] savings = new int[Problem.COLORS * Problem.TYPES * BUCKETS];
+    final int[] gains = new int[Problem.COLORS * Problem.TYPES * BUCKETS];
+    // Known-failed states, or null to search without one. A state is the set of assigned tiles (plus
+    // the type at the end of each partly assigned class chain), the per-color sums and the remaining
+    // inventory; nothing else affects whether it can be completed, so a cached refutation only ever
+    // prunes subtrees without solutions and never changes which solution is found.
+    NogoodCache nogoods;
+    // Zobrist-style hashes of the assigned set under two independent salts.
+    long hashA;
+    long hashB;
+    // Assignments tried so far.
+    long nodes;
+    // Polled every STOP_INTERVAL nodes when set; returning true abandons the search. An abandoned
+    // search leaves aborted set and records no nogoods for the subtrees it did not finish.
+    BooleanSupplier stop;
+    boolean aborted;
+    // Writes the current path to a checkpoint file when due, polled with stop; null for none.
+    Checkpoint.Writer checkpoints;
+    // Linear-relaxation bounding run after propagation every few nodes, or null for none.
+    LinearRelaxation relaxation;
+    // Instrumentation, or null for none.
+    SearchStats stats;
+    // Time spent computing valueOrder when the solver was built.
+    final long orderValuesNanos;
+    private int stopCountdown = STOP_INTERVAL;
+    // Largest spread between two types of one tile for any color; no value can be pruned
+    // while every color has at least this much slack on both sides of its target.
+    final int maxSpread;
+    // Type ordinals per tile in least-constraining-value order: valueOrder[tile * TYPES + k].
+    final int[] valueOrder;
+    // When set, ties in selectVariable and in the value order (after reorderValues) are broken
+    // at random instead of by index, so restarts explore different parts of the tree.
+    SplittableRandom random;
+    // Branching priority per tile on domain-size ties, smaller first. The low 32 bits are the tile's
+    // position in a fixed order (by index, or shuffled if random is set); with impact ordering the
+    // high bits drop each time assigning the tile fails propagation, so tiles whose choice
+    // refutes the most get branched on first.
+    final long[] priority;
+    // Whether to learn priorities from failures (see priority).
+    boolean impactOrdering;
+    // Failed assignments per tile, counted up to IMPACT_CAP, when impactOrdering is set.
+    final int[] impact;
+    // The tiles selectVariable may pick: unassigned, and first of their class chain still open.
+    final VariableHeap candidates;
+
+    Solver(Problem problem) {
+        this(problem, true);
+    }
+
+    Solver(Problem problem, boolean breakSymmetry) {
+        this.problem = problem;
+        this.breakSymmetry = breakSymmetry;
+        this.numTiles = problem.numTiles;
+        this.assignment = new int[numTiles];
+        this.domain = new int[numTiles];
+        this.remaining = problem.inventory.clone();
+        this.trail = new int[numTiles];
+        this.marks = new int[numTiles];
+        this.branchVar = new int[numTiles];
+        this.cursor = new byte[numTiles];
+        this.startNodes = new long[numTiles];
+        this.valueOrder = new int[numTiles * Problem.TYPES];
+        this.tileMin = new int[numTiles * Problem.COLORS];
+        this.tileMax = new int[numTiles * Problem.COLORS];
+        this.changes = new int[2 * numTiles * Problem.TYPES];
+        this.free = new int[numTiles];
+        this.position = new int[numTiles];
+        this.freeCount = numTiles;
+
+        long orderStart = System.nanoTime();
+        for (int v = 0; v < numTiles; v++) {
+            orderValues(v);
+        }
+        this.orderValuesNanos = System.nanoTime() - orderStart;
+
+        int fullDomain = (1 << Problem.TYPES) - 1;
+        int spread = 0;
+        for (int v = 0; v < numTiles; v++) {
+            assignment[v] = UNASSIGNED;
+            domain[v] = fullDomain;
+            free[v] = v;
+            position[v] = v;
+            computeBounds(v);
+            account(v, 1);
+            for (int c = 0; c < Problem.COLORS; c++) {
+                spread = Math.max(spread, tileMax[v * Problem.COLORS + c] - tileMin[v * Problem.COLORS + c]);
+            }
+        }
+        this.maxSpread = spread;
+
+        this.priority = new long[numTiles];
+        this.impact = new int[numTiles];
+        rankTiles();
+        this.candidates = new VariableHeap(domain, priority);
+        for (int v = 0; v < numTiles; v++) {
+            if (eligible(v)) {
+                candidates.insert(v);
+            }
+        }
+    }
+
+    // Runs the search and returns the type ordinal per tile, or null if there is no solution.
+    int[] solve() {
+        if (stats != null) {
+            stats.start();
+        }
+        boolean solved = propagate() && backtrack();
+        if (stats != null) {
+            stats.finish(this, solved);
+        }
+        return solved ? assignment.clone() : null;
+    }
+
+    // Continues the search saved in a checkpoint of this problem, like solve(). Throws
+    // IllegalArgumentException if the checkpoint was written for a different problem.
+    int[] solveFrom(Checkpoint checkpoint) {
+        if (checkpoint.numTiles != numTiles || checkpoint.fingerprint != Checkpoint.fingerprint(problem)) {
+            throw new IllegalArgumentException("The checkpoint was written for a different problem");
+        }
+        if (stats != null) {
+            stats.start();
+        }
+        boolean solved = propagate();
+        if (solved) {
+            restore(checkpoint);
+            searchBase = 0;
+            solved = search(openNode());
+        }
+        if (stats != null) {
+            stats.finish(this, solved);
+        }
+        return solved ? assignment.clone() : null;
+    }
+
+    // Replays a checkpoint's path from the root, leaving its choice points as they were when it
+    // was written. The relaxation stage is left out, since it need not run at the same nodes.
+    private void restore(Checkpoint checkpoint) {
+        LinearRelaxation saved = relaxation;
+        relaxation = null;
+        boolean replayed = true;
+        for (int d = 0; d < checkpoint.depth() && replayed; d++) {
+            int var = checkpoint.vars[d];
+            int next = checkpoint.cursors[d];
+            branchVar[d] = var;
+            cursor[d] = (byte) next;
+            startNodes[d] = nodes;
+            // The tile must be one the search could branch on here: unassigned, and next in its
+            // class chain under symmetry breaking.
+            replayed = var >= 0 && var < numTiles && next >= 1 && next <= Problem.TYPES && eligible(var)
+                    && push(var, valueOrder[var * Problem.TYPES + next - 1]);
+        }
+        relaxation = saved;
+        for (int t = 0; t < Problem.TYPES && replayed; t++) {
+            replayed = remaining[t] == checkpoint.remaining[t];
+        }
+        if (!replayed) {
+            reset();
+            throw new IllegalArgumentException("The checkpoint does not replay on this problem");
+        }
+        nodes = checkpoint.nodes;
+    }
+
+    // The current path as a checkpoint: the choice points below the current depth.
+    Checkpoint checkpoint(long fingerprint) {
+        int[] vars = new int[depth];
+        byte[] cursors = new byte[depth];
+        System.arraycopy(branchVar, 0, vars, 0, depth);
+        System.arraycopy(cursor, 0, cursors, 0, depth);
+        return new Checkpoint(numTiles, fingerprint, nodes, remaining.clone(), vars, cursors);
+    }
+
+    // Backtracking search with MRV and LCV heuristics, from the current state. The search is
+    // iterative: choice points live in branchVar/cursor/startNodes indexed by depth, so memory grows
+    // by a few bytes per level and the Java stack stays flat however many tiles there are.
+    // Returns true with the solution left in assignment, or false with the state restored.
+    boolean backtrack() {
+        searchBase = depth;
+        return search(openNode());
+    }
+
+    // Continues the search after the solution backtrack (or resume) last returned, for walking
+    // through every solution. Only valid without a nogood cache: a choice point that led to
+    // solutions would otherwise be recorded as failed once exhausted.
+    boolean resume() {
+        if (depth == searchBase) {
+            return false;
+        }
+        pop();
+        return search(true);
+    }
+
+    private boolean search(boolean open) {
+        while (true) {
+            if (depth == numTiles) {
+                if (targetsMet()) {
+                    return true;
+                }
+            } else if (open) {
+                if (advance()) {
+                    open = openNode();
+                    continue;
+                }
+                closeNode();
+            }
+            if (aborted) {
+                while (depth > searchBase) {
+                    pop();
+                }
+                return false;
+            }
+            if (depth == searchBase) {
+                return false;
+            }
+            pop();
+            open = true;
+        }
+    }
+
+    // Sets up the choice point at the current depth. Returns false if there is nothing to branch
+    // on: a complete assignment, a known nogood, or a stop request.
+    private boolean openNode() {
+        if (depth == numTiles) {
+            return false;
+        }
+        if (--stopCountdown <= 0) {
+            stopCountdown = STOP_INTERVAL;
+            if (stop != null) {
+                aborted |= stop.getAsBoolean();
+            }
+            if (checkpoints != null && !aborted) {
+                checkpoints.poll(this);
+            }
+        }
+        if (aborted) {
+            return false;
+        }
+        if (nogoods != null && nogoods.contains(stateHash(hashA, SALT_A), stateHash(hashB, SALT_B))) {
+            return false;
+        }
+        if (stats != null) {
+            stats.onNode(this);
+            if (stats.timing) {
+                long start = System.nanoTime();
+                branchVar[depth] = selectVariable();
+                stats.selectNanos += System.nanoTime() - start;
+            } else {
+                branchVar[depth] = selectVariable();
+            }
+        } else {
+            branchVar[depth] = selectVariable();
+        }
+        cursor[depth] = 0;
+        startNodes[depth] = nodes;
+        return true;
+    }
+
+    // Pushes the next untried value of the choice point at the current depth, if any is left.
+    private boolean advance() {
+        int var = branchVar[depth];
+        int base = var * Problem.TYPES;
+        while (cursor[depth] < Problem.TYPES) {
+            int val = valueOrder[base + cursor[depth]++];
+            if (push(var, val)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Records an exhausted choice point as a nogood. The state is back to what it was when the
+    // node was opened, so its hash can simply be recomputed.
+    private void closeNode() {
+        if (stats != null) {
+            stats.onBacktrack(depth);
+        }
+        if (nogoods != null && !aborted) {
+            nogoods.store(stateHash(hashA, SALT_A), stateHash(hashB, SALT_B), nodes - startNodes[depth] + 1);
+        }
+    }
+
+    // Assigns a value and propagates. Returns false, with the state unchanged, if the value is not
+    // available or propagation fails.
+    boolean push(int var, int val) {
+        if ((domain[var] & (1 << val)) == 0 || remaining[val] <= 0) {
+            return false;
+        }
+        int mark = changeTop;
+        marks[depth] = mark;
+        assign(var, val);
+        boolean consistent;
+        if (stats != null && stats.timing) {
+            long start = System.nanoTime();
+            consistent = orderSuccessor(var, val) && propagate() && (relaxation == null || relaxation.admits(this));
+            stats.propagateNanos += System.nanoTime() - start;
+        } else {
+            consistent = orderSuccessor(var, val) && propagate() && (relaxation == null || relaxation.admits(this));
+        }
+        if (consistent) {
+            return true;
+        }
+        if (stats != null) {
+            stats.failures++;
+        }
+        if (impactOrdering && impact[var] < IMPACT_CAP) {
+            impact[var]++;
+            priority[var] -= 1L << 32;
+            candidates.update(var);
+        }
+        restoreDomains(mark);
+        undo();
+        return false;
+    }
+
+    // Reverts the most recent successful push together with its propagation.
+    void pop() {
+        restoreDomains(marks[depth - 1]);
+        undo();
+    }
+
+    // Returns to the root: undoes every push and the root propagation.
+    void reset() {
+        while (depth > 0) {
+            pop();
+        }
+        restoreDomains(0);
+        aborted = false;
+    }
+
+    // Places a tile type on a variable and pushes it on the trail.
+    void assign(int var, int val) {
+        account(var, -1);
+        removeFree(var);
+        nodes++;
+        if (nogoods != null) {
+            toggleHash(var, val);
+        }
+        assignment[var] = val;
+        if (candidates.contains(var)) {
+            candidates.remove(var);
+        }
+        // Without symmetry breaking every unassigned tile is a candidate already.
+        int next = problem.nextInClass[var];
+        if (breakSymmetry && next >= 0 && !candidates.contains(next) && eligible(next)) {
+            candidates.insert(next);
+        }
+        remaining[val]--;
+        int base = (var * Problem.TYPES + val) * Problem.COLORS;
+        for (int c = 0; c < Problem.COLORS; c++) {
+            current[c] += problem.contrib[base + c];
+        }
+        trail[depth++] = var;
+    }
+
+    // Reverts the most recent assignment.
+    void undo() {
+        int var = trail[--depth];
+        int val = assignment[var];
+        int base = (var * Problem.TYPES + val) * Problem.COLORS;
+        for (int c = 0; c < Problem.COLORS; c++) {
+            current[c] -= problem.contrib[base + c];
+        }
+        remaining[val]++;
+        if (nogoods != null) {
+            toggleHash(var, val);
+        }
+        assignment[var] = UNASSIGNED;
+        int next = problem.nextInClass[var];
+        if (next >= 0 && candidates.contains(next) && !eligible(next)) {
+            candidates.remove(next);
+        }
+        if (!candidates.contains(var) && eligible(var)) {
+            candidates.insert(var);
+        }
+        freeCount++;
+        account(var, 1);
+    }
+
+    // Whether selectVariable may branch on an unassigned tile: under symmetry breaking only the
+    // first open tile of each class chain.
+    private boolean eligible(int var) {
+        if (assignment[var] != UNASSIGNED) {
+            return false;
+        }
+        int prev = problem.prevInClass[var];
+        return !breakSymmetry || prev < 0 || assignment[prev] != UNASSIGNED;
+    }
+
+    // Adds or removes a tile in the assigned-set hashes. Under symmetry breaking the remaining
+    // search also depends on the type at the end of each class chain, so that is hashed as well.
+    private void toggleHash(int var, int val) {
+        hashA ^= zobrist(var, SALT_A);
+        hashB ^= zobrist(var, SALT_B);
+        if (!breakSymmetry) {
+            return;
+        }
+        int prev = problem.prevInClass[var];
+        if (prev >= 0) {
+            int tail = numTiles + prev * Problem.TYPES + assignment[prev];
+            hashA ^= zobrist(tail, SALT_A);
+            hashB ^= zobrist(tail, SALT_B);
+        }
+        if (problem.nextInClass[var] >= 0) {
+            int tail = numTiles + var * Problem.TYPES + val;
+            hashA ^= zobrist(tail, SALT_A);
+            hashB ^= zobrist(tail, SALT_B);
+        }
+    }
+
+    // Folds the per-color sums and remaining inventory into an assigned-set hash.
+    private long stateHash(long hash, long salt) {
+        long h = hash ^ salt;
+        for (int c = 0; c < Problem.COLORS; c++) {
+            h = mix(h + current[c]);
+        }
+        for (int t = 0; t < Problem.TYPES; t++) {
+            h = mix(h + remaining[t]);
+        }
+        return h;
+    }
+
+    private static long zobrist(int index, long salt) {
+        return mix(index * 0x9E3779B97F4A7C15L + salt);
+    }
+
+    // SplitMix64 finalizer.
+    static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    // Symmetry breaking: the next tile of the class may not take a smaller type ordinal.
+    private boolean orderSuccessor(int var, int val) {
+        int next = problem.nextInClass[var];
+        if (!breakSymmetry || next < 0) {
+            return true;
+        }
+        int mask = domain[next] & ~((1 << val) - 1);
+        if (mask == 0) {
+            return false;
+        }
+        if (mask != domain[next]) {
+            setDomain(next, mask);
+        }
+        return true;
+    }
+
+    // Narrows the domain of an unassigned tile, recording the old mask for undo.
+    private void setDomain(int var, int mask) {
+        changes[changeTop++] = var;
+        changes[changeTop++] = domain[var];
+        account(var, -1);
+        domain[var] = mask;
+        computeBounds(var);
+        account(var, 1);
+        candidates.update(var);
+    }
+
+    // Undoes propagation back to a mark taken before the matching assignment.
+    void restoreDomains(int mark) {
+        while (changeTop > mark) {
+            int mask = changes[--changeTop];
+            int var = changes[--changeTop];
+            account(var, -1);
+            domain[var] = mask;
+            computeBounds(var);
+            account(var, 1);
+            candidates.update(var);
+        }
+    }
+
+    // Swaps an assigned tile just past the free prefix. Undo runs in LIFO order, so the tile is
+    // still there when it is released and growing the prefix by one puts it back.
+    private void removeFree(int var) {
+        int last = free[--freeCount];
+        int pos = position[var];
+        free[pos] = last;
+        position[last] = pos;
+        free[freeCount] = var;
+        position[var] = freeCount;
+    }
+
+    // Adds (sign = 1) or removes (sign = -1) an unassigned tile's share of the reachable sums and
+    // of the inventory bookkeeping below, for its current domain.
+    private void account(int var, int sign) {
+        int bounds = var * Problem.COLORS;
+        for (int c = 0; c < Problem.COLORS; c++) {
+            restMin[c] += sign * tileMin[bounds + c];
+            restMax[c] += sign * tileMax[bounds + c];
+        }
+
+        int mask = domain[var];
+        byte[] contrib = problem.contrib;
+        for (int t = 0; t < Problem.TYPES; t++) {
+            int bit = 1 << t;
+            int others = mask & ~bit;
+            if ((mask & bit) != 0) {
+                canTake[t] += sign;
+                if (others == 0) {
+                    forced[t] += sign;
+                }
+            }
+            for (int c = 0; c < Problem.COLORS; c++) {
+                int slot = c * Problem.TYPES + t;
+                if ((mask & bit) == 0 || others == 0) {
+                    // The tile's range does not depend on how many t tiles are left.
+                    capMin[slot] += sign * tileMin[bounds + c];
+                    capMax[slot] += sign * tileMax[bounds + c];
+                    continue;
+                }
+                int lo = Integer.MAX_VALUE;
+                int hi = Integer.MIN_VALUE;
+                for (int o = 0; o < Problem.TYPES; o++) {
+                    if ((others & (1 << o)) == 0) continue;
+                    int cnt = contrib[(var * Problem.TYPES + o) * Problem.COLORS + c];
+                    lo = Math.min(lo, cnt);
+                    hi = Math.max(hi, cnt);
+                }
+                int withT = contrib[(var * Problem.TYPES + t) * Problem.COLORS + c];
+                capMin[slot] += sign * lo;
+                capMax[slot] += sign * hi;
+                if (withT < lo) {
+                    savings[slot * BUCKETS + lo - withT] += sign;
+                }
+                if (withT > hi) {
+                    gains[slot * BUCKETS + withT - hi] += sign;
+                }
+            }
+        }
+    }
+
+    // Recomputes tileMin and tileMax of a tile from its current domain.
+    private void computeBounds(int var) {
+        int base = var * Problem.COLORS;
+        int mask = domain[var];
+        for (int c = 0; c < Problem.COLORS; c++) {
+            int lo = Integer.MAX_VALUE;
+            int hi = Integer.MIN_VALUE;
+            for (int t = 0; t < Problem.TYPES; t++) {
+                if ((mask & (1 << t)) == 0) continue;
+                int cnt = problem.contrib[(var * Problem.TYPES + t) * Problem.COLORS + c];
+                lo = Math.min(lo, cnt);
+                hi = Math.max(hi, cnt);
+            }
+            tileMin[base + c] = lo == Integer.MAX_VALUE ? 0 : lo;
+            tileMax[base + c] = hi == Integer.MIN_VALUE ? 0 : hi;
+        }
+    }
+
+    // Bounds check: every color target must lie between the smallest and largest reachable totals.
+    boolean feasible() {
+        for (int c = 0; c < Problem.COLORS; c++) {
+            int target = problem.targets[c];
+            if (target < current[c] + restMin[c] || target > current[c] + restMax[c]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Bounds propagation: removes every value that would push some color's reachable range past
+    // its target or that the inventory can no longer supply, and repeats until no domain changes.
+    // Returns false if a domain empties or the bound or cardinality checks fail.
+    boolean propagate() {
+        byte[] contrib = problem.contrib;
+        boolean changed = true;
+        while (changed) {
+            if (!feasible() || !inventoryFeasible()) {
+                return false;
+            }
+            changed = pruneExhausted();
+            if (!tight()) continue;
+            for (int i = 0; i < freeCount; i++) {
+                int v = free[i];
+                int mask = domain[v];
+                int kept = mask;
+                int bounds = v * Problem.COLORS;
+                for (int t = 0; t < Problem.TYPES; t++) {
+                    if ((mask & (1 << t)) == 0) continue;
+                    int base = (v * Problem.TYPES + t) * Problem.COLORS;
+                    for (int c = 0; c < Problem.COLORS; c++) {
+                        int cnt = contrib[base + c];
+                        int target = problem.targets[c];
+                        if (current[c] + restMin[c] - tileMin[bounds + c] + cnt > target
+                                || current[c] + restMax[c] - tileMax[bounds + c] + cnt < target) {
+                            kept &= ~(1 << t);
+                            break;
+                        }
+                    }
+                }
+                if (kept != mask) {
+                    if (kept == 0) {
+                        return false;
+                    }
+                    setDomain(v, kept);
+                    changed = true;
+                }
+            }
+        }
+        return true;
+    }
+
+    // Cardinality check: the unassigned tiles must fit into the remaining inventory, and for every
+    // type t each color target must stay reachable when at most (remaining - forced) tiles can
+    // switch to t, using the best such switches.
+    boolean inventoryFeasible() {
+        int total = 0;
+        for (int t = 0; t < Problem.TYPES; t++) {
+            if (forced[t] > remaining[t]) {
+                return false;
+            }
+            total += remaining[t];
+        }
+        if (freeCount > total) {
+            return false;
+        }
+        for (int t = 0; t < Problem.TYPES; t++) {
+            // Tiles that cannot take t must be covered by the other types.
+            if (freeCount - canTake[t] > total - remaining[t]) {
+                return false;
+            }
+        }
+        for (int c = 0; c < Problem.COLORS; c++) {
+            int target = problem.targets[c];
+            for (int t = 0; t < Problem.TYPES; t++) {
+                int slot = c * Problem.TYPES + t;
+                int k = remaining[t] - forced[t];
+                if (current[c] + capMin[slot] - best(savings, slot, k) > target
+                        || current[c] + capMax[slot] + best(gains, slot, k) < target) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    // Sum of the k largest entries of one histogram slot.
+    private static int best(int[] histogram, int slot, int k) {
+        int sum = 0;
+        int base = slot * BUCKETS;
+        for (int d = BUCKETS - 1; d > 0 && k > 0; d--) {
+            int take = Math.min(k, histogram[base + d]);
+            sum += take * d;
+            k -= take;
+        }
+        return sum;
+    }
+
+    // Once every remaining tile of a type is claimed by tiles that can take nothing else, removes
+    // that type from all other domains. Returns true if any domain changed.
+    private boolean pruneExhausted() {
+        boolean changed = false;
+        for (int t = 0; t < Problem.TYPES; t++) {
+            if (remaining[t] != forced[t] || canTake[t] == forced[t]) continue;
+            int bit = 1 << t;
+            for (int i = 0; i < freeCount; i++) {
+                int v = free[i];
+                int mask = domain[v];
+                if ((mask & bit) != 0 && mask != bit) {
+                    setDomain(v, mask & ~bit);
+                    changed = true;
+                }
+            }
+        }
+        return changed;
+    }
+
+    // True if some color is close enough to its target that a single tile could overshoot it.
+    private boolean tight() {
+        for (int c = 0; c < Problem.COLORS; c++) {
+            int target = problem.targets[c];
+            if (target - current[c] - restMin[c] < maxSpread || current[c] + restMax[c] - target < maxSpread) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Checks whether the complete assignment hits every color target exactly.
+    boolean targetsMet() {
+        for (int c = 0; c < Problem.COLORS; c++) {
+            if (current[c] != problem.targets[c]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // MRV: the candidate tile with the smallest domain, then the one with the lowest priority. Only
+    // the first open tile of each class chain is a candidate under symmetry breaking; the chain
+    // order makes the others follow it.
+    int selectVariable() {
+        return candidates.peek();
+    }
+
+    // Sets the tie-breaking order in the low bits of priority: by index, or at random if random
+    // is set.
+    private void rankTiles() {
+        int[] order = new int[numTiles];
+        for (int v = 0; v < numTiles; v++) {
+            order[v] = v;
+        }
+        if (random != null) {
+            for (int i = numTiles - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int t = order[i];
+                order[i] = order[j];
+                order[j] = t;
+            }
+        }
+        for (int r = 0; r < numTiles; r++) {
+            int v = order[r];
+            priority[v] = (long) (IMPACT_CAP - impact[v]) << 32 | r;
+        }
+    }
+
+    // Recomputes every tile's value order and tie-breaking order, breaking ties at random if random is set.
+    // Only valid at the root, before any push.
+    void reorderValues() {
+        for (int v = 0; v < numTiles; v++) {
+            orderValues(v);
+        }
+        if (random != null) {
+            rankTiles();
+            candidates.rebuild();
+        }
+    }
+
+    // Fills valueOrder for a tile by total contribution (LCV), keeping type order on ties (or a
+    // random order if random is set).
+    private void orderValues(int var) {
+        int base = var * Problem.TYPES;
+        int[] sums = new int[Problem.TYPES];
+        for (int t = 0; t < Problem.TYPES; t++) {
+            valueOrder[base + t] = t;
+            for (int c = 0; c < Problem.COLORS; c++) {
+                sums[t] += problem.contrib[(base + t) * Problem.COLORS + c];
+            }
+        }
+        if (random != null) {
+            for (int i = Problem.TYPES - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int t = valueOrder[base + i];
+                valueOrder[base + i] = valueOrder[base + j];
+                valueOrder[base + j] = t;
+            }
+        }
+        for (int i = 1; i < Problem.TYPES; i++) {
+            int t = valueOrder[base + i];
+            int j = i - 1;
+            while (j >= 0 && sums[valueOrder[base + j]] > sums[t]) {
+                valueOrder[base + j + 1] = valueOrder[base + j];
+                j--;
+            }
+            valueOrder[base + j + 1] = t;
+        }
+    }
+}
@@ -0,0 +1,241 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+// Resident solver behind a loopback HTTP endpoint, so requests run on a warm JIT and skip the
+// landscape preprocessing when the landscape was seen before.
+//
+//   POST /solve            body: a problem in the tilesproblem.txt format
+//   GET  /solve?landscape=HASH&tiles=full,outer,el&targets=c1,c2,c3,c4[&timeout=SECONDS]
+//
+// Built problems are kept in an LRU cache keyed by the landscape hash, which every response
+// returns in the X-Landscape header; the GET form then solves new inventories and targets against
+// that landscape without sending or parsing it again. The response body is what Main prints.
+//
+// At most `workers` searches run at once and up to `queue` more requests wait for one; beyond that
+// requests are turned away with 503 and a Retry-After header instead of piling up.
+final class SolverServer {
+
+    static final int DEFAULT_QUEUE = 64;
+    static final int DEFAULT_LANDSCAPES = 64;
+    // Largest POST body accepted; a 4000x4000 landscape in the text format is about 32 MB.
+    static final int MAX_BODY_BYTES = 64 << 20;
+
+    // A built problem together with the landscape it came from, to tell hash collisions apart.
+    private static final class Landscape {
+        final int size;
+        final byte[] cells;
+        final Problem problem;
+
+        Landscape(int size, byte[] cells, Problem problem) {
+            this.size = size;
+            this.cells = cells;
+            this.problem = problem;
+        }
+    }
+
+    final int workers;
+    final long timeoutNanos;
+    final long cacheBytes;
+    private final Semaphore admitted;
+    private final Semaphore running;
+    private final Map<Long, Landscape> landscapes;
+    private HttpServer server;
+    private ExecutorService executor;
+
+    final AtomicLong cacheHits = new AtomicLong();
+    final AtomicLong cacheMisses = new AtomicLong();
+
+    SolverServer(int workers, int queue, int maxLandscapes, long timeoutNanos, long cacheBytes) {
+        this.workers = workers;
+        this.timeoutNanos = timeoutNanos;
+        this.cacheBytes = cacheBytes;
+        this.admitted = new Semaphore(workers + queue);
+        this.running = new Semaphore(workers);
+        this.landscapes = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Landscape> eldest) {
+                return size() > maxLandscapes;
+            }
+        };
+    }
+
+    // Binds to the loopback interface only; port 0 picks a free one.
+    void start(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        // Every admitted request needs a thread, plus one to turn the others away.
+        executor = BatchSolver.newExecutor(admitted.availablePermits() + 1);
+        server.setExecutor(executor);
+        server.createContext("/solve", this::handle);
+        server.start();
+    }
+
+    int port() {
+        return server.getAddress().getPort();
+    }
+
+    void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!admitted.tryAcquire()) {
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                respond(exchange, 503, "Busy, try again later" + System.lineSeparator());
+                return;
+            }
+            try {
+                Problem problem;
+                long hash;
+                Map<String, String> query = query(exchange.getRequestURI().getRawQuery());
+                if (exchange.getRequestMethod().equals("POST")) {
+                    byte[] body = exchange.getRequestBody().readNBytes(MAX_BODY_BYTES + 1);
+                    if (body.length > MAX_BODY_BYTES) {
+                        respond(exchange, 413, "Problem larger than " + (MAX_BODY_BYTES >> 20) + " MB" + System.lineSeparator());
+                        return;
+                    }
+                    // A landscape takes two bytes per cell, so a grid with more cells than the body has
+                    // bytes is malformed; rejecting it bounds what parsing allocates.
+                    Main.InputData input = Main.parseInput(ByteBuffer.wrap(body), body.length);
+                    hash = Problem.landscapeHash(input.size, input.landscape);
+                    problem = lookup(hash, input)
+                            .withInventory(Problem.inventoryOf(input.tilesDict))
+                            .withTargets(Problem.targetsOf(input.targets));
+                } else if (exchange.getRequestMethod().equals("GET")) {
+                    hash = Long.parseUnsignedLong(require(query, "landscape"), 16);
+                    Landscape landscape;
+                    synchronized (landscapes) {
+                        landscape = landscapes.get(hash);
+                    }
+                    if (landscape == null) {
+                        respond(exchange, 404, "Unknown landscape, POST the full problem first" + System.lineSeparator());
+                        return;
+                    }
+                    cacheHits.incrementAndGet();
+                    problem = landscape.problem
+                            .withInventory(parseCounts(require(query, "tiles"), Problem.TYPES))
+                            .withTargets(Main.parseTargets(require(query, "targets")));
+                } else {
+                    respond(exchange, 405, "Use GET or POST" + System.lineSeparator());
+                    return;
+                }
+                long timeout = query.containsKey("timeout")
+                        ? (long) (Double.parseDouble(query.get("timeout")) * 1e9) : timeoutNanos;
+                exchange.getResponseHeaders().set("X-Landscape", Long.toHexString(hash));
+                solve(exchange, problem, timeout);
+            } catch (IllegalArgumentException e) {
+                respond(exchange, 400, "Bad request: " + e.getMessage() + System.lineSeparator());
+            } catch (RuntimeException e) {
+                // Anything else is a bug, but the client still gets an answer.
+                respond(exchange, 500, "Internal error: " + e + System.lineSeparator());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                admitted.release();
+            }
+        }
+    }
+
+    // The cached problem for this landscape, building and caching it on a miss.
+    private Problem lookup(long hash, Main.InputData input) {
+        Landscape landscape;
+        synchronized (landscapes) {
+            landscape = landscapes.get(hash);
+        }
+        if (landscape != null && landscape.size == input.size && Arrays.equals(landscape.cells, input.landscape)) {
+            cacheHits.incrementAndGet();
+            return landscape.problem;
+        }
+        cacheMisses.incrementAndGet();
+        Problem problem = Problem.build(input.size, input.landscape, input.tilesDict, input.targets);
+        synchronized (landscapes) {
+            landscapes.put(hash, new Landscape(input.size, input.landscape, problem));
+        }
+        return problem;
+    }
+
+    private void solve(HttpExchange exchange, Problem problem, long timeout) throws IOException, InterruptedException {
+        String text;
+        running.acquire();
+        try {
+            Solver solver = new Solver(problem);
+            solver.nogoods = cacheBytes > 0 ? new NogoodCache(cacheBytes) : null;
+            long start = System.nanoTime();
+            if (timeout > 0) {
+                long deadline = start + timeout;
+                solver.stop = () -> System.nanoTime() > deadline;
+            }
+            int[] solution = solver.solve();
+            exchange.getResponseHeaders().set("X-Solve-Ms",
+                    String.format(Locale.ROOT, "%.3f", (System.nanoTime() - start) / 1e6));
+            text = solver.aborted
+                    ? String.format(Locale.ROOT, "Timed out after %d ms%n", timeout / 1_000_000)
+                    : Main.formatSolution(solution);
+        } finally {
+            running.release();
+        }
+        respond(exchange, 200, text);
+    }
+
+    private static void respond(HttpExchange exchange, int status, String text) throws IOException {
+        byte[] body = text.getBytes(StandardCharsets.US_ASCII);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=us-ascii");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static Map<String, String> query(String raw) {
+        Map<String, String> params = new HashMap<>();
+        if (raw == null) {
+            return params;
+        }
+        for (String pair : raw.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                params.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return params;
+    }
+
+    private static String require(Map<String, String> query, String name) {
+        String value = query.get(name);
+        if (value == null) {
+            throw new IllegalArgumentException("missing parameter " + name);
+        }
+        return value;
+    }
+
+    // Parses comma-separated counts, in TileType order for the inventory.
+    private static int[] parseCounts(String text, int expected) {
+        String[] parts = text.split(",");
+        if (parts.length != expected) {
+            throw new IllegalArgumentException("Expected " + expected + " comma-separated counts: " + text);
+        }
+        int[] counts = new int[expected];
+        for (int i = 0; i < expected; i++) {
+            counts[i] = Integer.parseInt(parts[i].trim());
+        }
+        return counts;
+    }
+}
@@ -1,201 +1,160 @@
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
-// Main class that implements the tiling functionality
+// Verifies a solution file against a problem of any size and optionally renders the tiling.
+// Visible bushes are scored from the problem's per-tile contribution tables, so checking costs
+// O(tiles); only rendering touches every cell, and it streams rows through a buffered writer.
+//
+//   java Test [--render] [problem-file] [solution-file]
+//
+// The defaults are tilesproblem.txt and output.txt. Prints PASS, or FAIL with every difference,
+// and exits with status 1 on failure.
 public class Test {
-    public static final int TILE_SIZE = 4;
-    public static final int GRID_SIZE = 20;
-    
-    // The pattern for the EL_SHAPE tile
-    public static final int[][] EL_SHAPE_PATTERN = {
-        {1, 0, 0, 0},
-        {1, 0, 0, 0},
-        {1, 0, 0, 0},
-        {1, 1, 1, 1}
-    };
 
-    // Class to hold parsed input data
-    static class ParsedData {
-        int[][] landscape;
-        Map<String, Integer> tiles;
-        Map<Integer, Integer> targets;
-        
-        public ParsedData(int[][] landscape, Map<String, Integer> tiles, Map<Integer, Integer> targets) {
-            this.landscape = landscape;
-            this.tiles = tiles;
-            this.targets = targets;
-        }
-    }
-    
-    // Class to hold tile placement data
-    static class TilePlacement {
-        int tileIndex;
-        String tileType;
-        
-        public TilePlacement(int tileIndex, String tileType) {
-            this.tileIndex = tileIndex;
-            this.tileType = tileType;
+    // Problems listed beyond this many of one kind are only counted.
+    static final int MAX_LISTED = 10;
+
+    static final class Report {
+        // Visible bushes per color (0-based) and tiles used per type ordinal.
+        final int[] visible = new int[Problem.COLORS];
+        final int[] used = new int[Problem.TYPES];
+        final List<String> errors = new ArrayList<>();
+        private int unlisted;
+
+        boolean passed() {
+            return errors.isEmpty() && unlisted == 0;
         }
-    }
-    
-    // Applies a tile to the grid given its type and top-left position.
-    public static void applyTile(String[][] grid, String tileType, int row, int col) {
-        if ("FULL_BLOCK".equals(tileType)) {
-            for (int i = row; i < row + TILE_SIZE; i++) {
-                for (int j = col; j < col + TILE_SIZE; j++) {
-                    grid[i][j] = "X";
-                }
-            }
-        } else if ("OUTER_BOUNDARY".equals(tileType)) {
-            // left and right boundaries
-            for (int i = row; i < row + TILE_SIZE; i++) {
-                grid[i][col] = "X";
-                grid[i][col + TILE_SIZE - 1] = "X";
+
+        void error(String message) {
+            if (errors.size() < MAX_LISTED) {
+                errors.add(message);
+            } else {
+                unlisted++;
             }
-            // top and bottom boundaries
-            for (int j = col; j < col + TILE_SIZE; j++) {
-                grid[row][j] = "X";
-                grid[row + TILE_SIZE - 1][j] = "X";
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(passed() ? "PASS" : "FAIL").append(System.lineSeparator());
+            for (String error : errors) {
+                sb.append("  ").append(error).append(System.lineSeparator());
             }
-        } else if ("EL_SHAPE".equals(tileType)) {
-            for (int i = 0; i < TILE_SIZE; i++) {
-                for (int j = 0; j < TILE_SIZE; j++) {
-                    if (EL_SHAPE_PATTERN[i][j] == 1) {
-                        grid[row + i][col + j] = "X";
-                    }
-                }
+            if (unlisted > 0) {
+                sb.append("  ... and ").append(unlisted).append(" more").append(System.lineSeparator());
             }
+            return sb.toString();
         }
     }
-    
-    // Parses the input text from tilesproblem.txt into landscape, tiles, and targets.
-    public static ParsedData parseInput(String inputText) {
-        // Split into sections (expecting sections to start with "# ")
-        String[] sections = inputText.split("# ");
-        
-        // Parse landscape section (skip the first line which is the header)
-        String[] landscapeLines = sections[1].split("\n");
-        int[][] landscape = new int[GRID_SIZE][GRID_SIZE];
-        for (int j = 0; j < GRID_SIZE; j++) {
-            String rowStr = landscapeLines[j + 1]; // skip header line
-            for (int i = 0; i < GRID_SIZE; i++) {
-                // In the input, each cell is separated by a space.
-                char ch = rowStr.charAt(i * 2);
-                if (ch == ' ') {
-                    landscape[j][i] = 0;
-                } else {
-                    // Assuming the character represents a digit
-                    landscape[j][i] = Character.getNumericValue(ch);
-                }
+
+    // Scores a placement against the problem's inventory and targets.
+    static Report verify(Problem problem, int[] placement, Report report) {
+        int missing = 0;
+        for (int v = 0; v < problem.numTiles; v++) {
+            int type = placement[v];
+            if (type == Solver.UNASSIGNED) {
+                missing++;
+                continue;
+            }
+            report.used[type]++;
+            int base = (v * Problem.TYPES + type) * Problem.COLORS;
+            for (int c = 0; c < Problem.COLORS; c++) {
+                report.visible[c] += problem.contrib[base + c];
             }
         }
-        
-        // Parse tiles section
-        String[] tilesLines = sections[2].trim().split("\n");
-        // The second line contains the tile info (remove leading/trailing whitespace and the curly braces)
-        String tilesLine = tilesLines[1].trim();
-        if (tilesLine.startsWith("{") && tilesLine.endsWith("}")) {
-            tilesLine = tilesLine.substring(1, tilesLine.length() - 1);
+        if (missing > 0) {
+            report.error(missing + " of " + problem.numTiles + " tiles have no placement");
         }
-        Map<String, Integer> tilesDict = new HashMap<>();
-        String[] tileParts = tilesLine.split(",");
-        for (String part : tileParts) {
-            String[] keyVal = part.split("=");
-            if (keyVal.length == 2) {
-                String key = keyVal[0].trim();
-                int value = Integer.parseInt(keyVal[1].trim());
-                tilesDict.put(key, value);
+        for (int t = 0; t < Problem.TYPES; t++) {
+            if (report.used[t] > problem.inventory[t]) {
+                report.error(String.format("%s: %d used, %d available (%+d)", TileType.VALUES[t].name(),
+                        report.used[t], problem.inventory[t], report.used[t] - problem.inventory[t]));
             }
         }
-        
-        // Parse targets section
-        String[] targetLines = sections[3].trim().split("\n");
-        Map<Integer, Integer> targets = new HashMap<>();
-        // Skip the header line
-        for (int k = 1; k < targetLines.length; k++) {
-            String target = targetLines[k];
-            String[] parts = target.split(":");
-            if (parts.length == 2) {
-                int color = Integer.parseInt(parts[0].trim());
-                int count = Integer.parseInt(parts[1].trim());
-                targets.put(color, count);
+        for (int c = 0; c < Problem.COLORS; c++) {
+            if (report.visible[c] != problem.targets[c]) {
+                report.error(String.format("color %d: %d visible, target %d (%+d)", c + 1,
+                        report.visible[c], problem.targets[c], report.visible[c] - problem.targets[c]));
             }
         }
-        
-        return new ParsedData(landscape, tilesDict, targets);
+        return report;
     }
-    
-    // Reads the tilesproblem.txt file, applies the tile placements, and prints the resulting grid and counters.
-    public static void visualizeTiling(List<TilePlacement> tilePlacements, int gridSize) throws IOException {
-        String inputText = new String(Files.readAllBytes(Paths.get("tilesproblem.txt")), StandardCharsets.UTF_8);
-        ParsedData pd = parseInput(inputText);
-        int[][] landscape = pd.landscape;
-        
-        // Create grid filled with "." (as strings)
-        String[][] grid = new String[gridSize][gridSize];
-        for (int i = 0; i < gridSize; i++) {
-            Arrays.fill(grid[i], ".");
-        }
-        
-        int blocksPerRow = gridSize / TILE_SIZE;
-        // Place each tile based on its index and type
-        for (TilePlacement placement : tilePlacements) {
-            int tileIndex = placement.tileIndex;
-            String tileType = placement.tileType;
-            int row = (tileIndex / blocksPerRow) * TILE_SIZE;
-            int col = (tileIndex % blocksPerRow) * TILE_SIZE;
-            applyTile(grid, tileType, row, col);
-        }
-        
-        // Create counters for uncovered landscape cells and for tile types.
-        // Counter for colors: indices 1 to 4 (index 0 is unused)
-        int[] counter = new int[5];
-        // Counter for tile types
-        Map<String, Integer> counter2 = new HashMap<>();
-        counter2.put("FULL_BLOCK", 0);
-        counter2.put("OUTER_BOUNDARY", 0);
-        counter2.put("EL_SHAPE", 0);
-        
-        // Print the grid and update counter for uncovered cells that have a positive value in the landscape.
-        for (int i = 0; i < gridSize; i++) {
-            System.out.println(String.join(" ", grid[i]));
-            for (int j = 0; j < gridSize; j++) {
-                if (grid[i][j].equals(".") && landscape[i][j] > 0) {
-                    counter[landscape[i][j]]++;
-                }
+
+    // Writes the grid with X for covered cells and . for visible ones, one row per line, followed
+    // by the visible bushes per color and the tiles used per type.
+    static void render(Main.InputData input, int[] placement, Report report, Writer out) throws IOException {
+        int size = input.size;
+        int tileCols = size / Main.TILE_SIZE;
+        char[] row = new char[Math.max(0, 2 * size - 1)];
+        Arrays.fill(row, ' ');
+        for (int r = 0; r < size; r++) {
+            int tileRow = r / Main.TILE_SIZE;
+            for (int i = 0; i < size; i++) {
+                int tileCol = i / Main.TILE_SIZE;
+                int tile = tileRow * tileCols + tileCol;
+                boolean covered = tileRow < tileCols && tileCol < tileCols && placement[tile] != Solver.UNASSIGNED
+                        && TileType.VALUES[placement[tile]].pattern[r % Main.TILE_SIZE][i % Main.TILE_SIZE] == 1;
+                row[2 * i] = covered ? 'X' : '.';
             }
+            out.write(row);
+            out.write(System.lineSeparator());
         }
-        
-        // Count tile placements by type
-        for (TilePlacement placement : tilePlacements) {
-            counter2.put(placement.tileType, counter2.get(placement.tileType) + 1);
+        StringBuilder types = new StringBuilder("{");
+        for (int t = 0; t < Problem.TYPES; t++) {
+            types.append(t > 0 ? ", " : "").append(TileType.VALUES[t].name()).append('=').append(report.used[t]);
         }
-        
-        // Print the counters
-        System.out.println("Landscape counter (colors 1-4): " + Arrays.toString(counter));
-        System.out.println("Tile type counter: " + counter2);
+        out.write("Landscape counter (colors 1-4): " + Arrays.toString(report.visible) + System.lineSeparator());
+        out.write("Tile type counter: " + types.append('}') + System.lineSeparator());
     }
-    
-    // Main method
+
     public static void main(String[] args) {
+        boolean render = false;
+        List<String> files = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.equals("--render")) {
+                render = true;
+            } else {
+                files.add(arg);
+            }
+        }
+        Path problemFile = Paths.get(files.size() > 0 ? files.get(0) : "tilesproblem.txt");
+        Path solutionFile = Paths.get(files.size() > 1 ? files.get(1) : "output.txt");
         try {
-            List<TilePlacement> tilePlacements = new ArrayList<>();
-            List<String> lines = Files.readAllLines(Paths.get("output.txt"), StandardCharsets.UTF_8);
-            // Each line should have a tile index and a tile type separated by a space.
-            for (String line : lines) {
-                line = line.trim();
-                if (line.isEmpty()) continue;
-                String[] parts = line.split(" ");
-                int num = Integer.parseInt(parts[0]);
-                String name = parts[1];
-                tilePlacements.add(new TilePlacement(num, name));
+            Main.InputData input = null;
+            Problem problem;
+            if (Problem.isCompiled(problemFile)) {
+                problem = Problem.load(problemFile);
+            } else {
+                input = Main.parseInput(problemFile);
+                problem = Problem.build(input.size, input.landscape, input.tilesDict, input.targets);
+            }
+            Report report = new Report();
+            int[] placement = Main.readPlacement(solutionFile, problem.numTiles, report::error);
+            verify(problem, placement, report);
+            Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.US_ASCII), 1 << 16);
+            if (render) {
+                if (input != null) {
+                    render(input, placement, report, out);
+                } else {
+                    out.write("(a compiled problem has no landscape to render)" + System.lineSeparator());
+                }
+            }
+            out.write(report.toString());
+            out.flush();
+            if (!report.passed()) {
+                System.exit(1);
             }
-            visualizeTiling(tilePlacements, GRID_SIZE);
         } catch (IOException e) {
-            e.printStackTrace();
+            System.err.println("Error reading the files: " + e.getMessage());
+            System.exit(2);
         }
     }
 }
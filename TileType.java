@@ -0,0 +1,52 @@
+// The tile types that can be placed on a 4x4 patch, with the cells each one covers.
+enum TileType {
+    FULL_BLOCK(new int[][]{
+        {1, 1, 1, 1},
+        {1, 1, 1, 1},
+        {1, 1, 1, 1},
+        {1, 1, 1, 1}
+    }),
+    OUTER_BOUNDARY(new int[][]{
+        {1, 1, 1, 1},
+        {1, 0, 0, 1},
+        {1, 0, 0, 1},
+        {1, 1, 1, 1}
+    }),
+    EL_SHAPE(new int[][]{
+        {1, 0, 0, 0},
+        {1, 0, 0, 0},
+        {1, 0, 0, 0},
+        {1, 1, 1, 1}
+    });
+
+    // Cached copy of values() so hot paths can map ordinals back without allocating.
+    static final TileType[] VALUES = values();
+
+    // 1 where the tile hides the bush below it, 0 where the bush stays visible.
+    final int[][] pattern;
+    // Bit (row * TILE_SIZE + col) is set for every cell the tile leaves visible.
+    final long visibleMask;
+
+    TileType(int[][] pattern) {
+        this.pattern = pattern;
+        long mask = 0;
+        for (int i = 0; i < pattern.length; i++) {
+            for (int j = 0; j < pattern[i].length; j++) {
+                if (pattern[i][j] == 0) {
+                    mask |= 1L << (i * pattern[i].length + j);
+                }
+            }
+        }
+        this.visibleMask = mask;
+    }
+
+    // Looks up a tile type by the name used in the input files, or returns null if unknown.
+    static TileType fromName(String name) {
+        for (TileType type : VALUES) {
+            if (type.name().equals(name)) {
+                return type;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,111 @@
+import java.util.Arrays;
+
+// Indexed binary min-heap of the tiles selectVariable may branch on, ordered by domain size and
+// then by a per-tile priority (smaller first, below 2^56). Each tile's slot in the heap is tracked,
+// so a tile whose domain or priority changed is re-sifted in O(log n) and selection is a peek at
+// the root.
+final class VariableHeap {
+
+    private final int[] domain;
+    private final long[] priority;
+    private final int[] heap;
+    // Index of each tile in heap, or -1 when it is not in the heap.
+    private final int[] slot;
+    private int size;
+
+    VariableHeap(int[] domain, long[] priority) {
+        this.domain = domain;
+        this.priority = priority;
+        this.heap = new int[domain.length];
+        this.slot = new int[domain.length];
+        Arrays.fill(slot, -1);
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean contains(int var) {
+        return slot[var] >= 0;
+    }
+
+    // The tile with the smallest domain (lowest priority on ties), or -1 if the heap is empty.
+    int peek() {
+        return size > 0 ? heap[0] : -1;
+    }
+
+    // Adds a tile that is not in the heap yet.
+    void insert(int var) {
+        if (slot[var] >= 0) {
+            throw new IllegalArgumentException("Tile " + var + " is already in the heap");
+        }
+        heap[size] = var;
+        slot[var] = size;
+        siftUp(size++);
+    }
+
+    void remove(int var) {
+        int i = slot[var];
+        int last = heap[--size];
+        slot[var] = -1;
+        if (i == size) {
+            return;
+        }
+        heap[i] = last;
+        slot[last] = i;
+        siftUp(i);
+        siftDown(slot[last]);
+    }
+
+    // Restores the order after the tile's domain or priority changed.
+    void update(int var) {
+        int i = slot[var];
+        if (i >= 0) {
+            siftUp(i);
+            siftDown(slot[var]);
+        }
+    }
+
+    // Re-sorts the whole heap, after the priorities changed.
+    void rebuild() {
+        for (int i = size / 2 - 1; i >= 0; i--) {
+            siftDown(i);
+        }
+    }
+
+    private long key(int var) {
+        return (long) Integer.bitCount(domain[var]) << 56 | priority[var];
+    }
+
+    private void siftUp(int i) {
+        int var = heap[i];
+        long key = key(var);
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (key(heap[parent]) <= key) break;
+            heap[i] = heap[parent];
+            slot[heap[i]] = i;
+            i = parent;
+        }
+        heap[i] = var;
+        slot[var] = i;
+    }
+
+    private void siftDown(int i) {
+        int var = heap[i];
+        long key = key(var);
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) break;
+            if (child + 1 < size && key(heap[child + 1]) < key(heap[child])) {
+                child++;
+            }
+            if (key(heap[child]) >= key) break;
+            heap[i] = heap[child];
+            slot[heap[i]] = i;
+            i = child;
+        }
+        heap[i] = var;
+        slot[var] = i;
+    }
+}